@@ -0,0 +1,102 @@
+package cashflowoptimizer.benchmarks;
+
+import cashflowoptimizer.Action;
+import cashflowoptimizer.Graph;
+import cashflowoptimizer.NodeType;
+import cashflowoptimizer.RLAgent;
+import cashflowoptimizer.StateDiscretizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Q-table hot paths: choosing an action, one Q-learning update, and hashing
+ * a state. States are balance vectors drawn around the network's balances
+ * and cycled through, so the table sees a realistic mix of hits and misses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AgentBenchmark {
+    private static final int STATES = 1024;
+
+    @Param({"100", "1000", "10000"})
+    public int nodeCount;
+
+    @Param({"4", "16"})
+    public int degree;
+
+    @Param({"UNIFORM", "HEAVY_TAILED"})
+    public CostDistribution costs;
+
+    private RLAgent agent;
+    private cashflowoptimizer.State[] states;
+    private List<Action> actions;
+    private double[] rewards;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        NetworkSpec spec = new NetworkSpec(nodeCount, degree, costs, 42);
+        Graph graph = spec.toGraph();
+        StateDiscretizer discretizer = new StateDiscretizer();
+        Random random = new Random(7);
+
+        states = new cashflowoptimizer.State[STATES];
+        double[] balances = new double[nodeCount];
+        for (int s = 0; s < STATES; s++) {
+            for (int i = 0; i < nodeCount; i++) {
+                balances[i] = spec.balances[i] + random.nextInt(10);
+            }
+            states[s] = cashflowoptimizer.State.of(graph, balances, discretizer);
+        }
+
+        actions = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            if (spec.nodeTypes[i] != NodeType.REVENUE) continue;
+            for (int j = 0; j < nodeCount; j++) {
+                if (spec.nodeTypes[j] == NodeType.EXPENSE) {
+                    actions.add(new Action(spec.nodeIds[i], spec.nodeIds[j]));
+                }
+            }
+        }
+        actions = actions.subList(0, Math.min(actions.size(), 64));
+
+        rewards = new double[STATES];
+        for (int s = 0; s < STATES; s++) {
+            rewards[s] = -costs.sample(random) * 1000;
+        }
+
+        agent = new RLAgent(0.1, 0.9, 0.1, 42);
+        for (int s = 0; s + 1 < STATES; s++) {
+            agent.updateQValue(states[s], actions.get(s % actions.size()), rewards[s], states[s + 1], actions);
+        }
+    }
+
+    @Benchmark
+    public Action selectAction() {
+        cashflowoptimizer.State state = states[next];
+        next = (next + 1) & (STATES - 1);
+        return agent.selectAction(state, actions);
+    }
+
+    @Benchmark
+    public void updateQValue() {
+        int s = next;
+        next = (next + 1) & (STATES - 1);
+        agent.updateQValue(states[s], actions.get(s % actions.size()), rewards[s],
+                           states[next], actions);
+    }
+
+    @Benchmark
+    public void stateHashCode(Blackhole blackhole) {
+        for (cashflowoptimizer.State state : states) {
+            blackhole.consume(state.hashCode());
+        }
+    }
+}
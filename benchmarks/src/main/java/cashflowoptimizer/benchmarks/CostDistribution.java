@@ -0,0 +1,24 @@
+package cashflowoptimizer.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Edge cost distributions the benchmarks are parameterised by.
+ */
+public enum CostDistribution {
+    UNIT,          // Every edge costs 1, so many paths tie
+    UNIFORM,       // Integer costs 1 .. 20
+    HEAVY_TAILED;  // Pareto(alpha = 1.5) costs, a few edges are very expensive
+
+    public double sample(Random random) {
+        switch (this) {
+            case UNIT:
+                return 1;
+            case UNIFORM:
+                return 1 + random.nextInt(20);
+            case HEAVY_TAILED:
+            default:
+                return Math.floor(Math.pow(1 - random.nextDouble(), -1 / 1.5));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package cashflowoptimizer.benchmarks;
+
+import cashflowoptimizer.Graph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Graph construction and copying.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GraphBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int nodeCount;
+
+    @Param({"4", "16"})
+    public int degree;
+
+    @Param({"UNIFORM", "HEAVY_TAILED"})
+    public CostDistribution costs;
+
+    private NetworkSpec spec;
+    private Graph graph;
+    private Graph nodesOnly;
+
+    @Setup
+    public void setUp() {
+        spec = new NetworkSpec(nodeCount, degree, costs, 42);
+        graph = spec.toGraph();
+        graph.freeze();
+        nodesOnly = new Graph();
+        spec.addNodes(nodesOnly);
+    }
+
+    @Benchmark
+    public Graph copy() {
+        return graph.copy();
+    }
+
+    /**
+     * Copies the graph that holds only the nodes; the baseline addEdgeBulk
+     * starts from.
+     */
+    @Benchmark
+    public Graph copyNodes() {
+        return nodesOnly.copy();
+    }
+
+    /**
+     * Adds every edge to a copy of the graph that holds only the nodes.
+     * Subtract copyNodes for the cost of the edges alone. The copy is made
+     * here rather than in a per-invocation setup, which would distort these
+     * microsecond timings, and its allocations are counted by copyNodes too.
+     */
+    @Benchmark
+    public Graph addEdgeBulk() {
+        Graph target = nodesOnly.copy();
+        spec.addEdges(target);
+        return target;
+    }
+}
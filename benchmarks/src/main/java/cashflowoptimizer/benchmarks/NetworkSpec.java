@@ -0,0 +1,82 @@
+package cashflowoptimizer.benchmarks;
+
+import cashflowoptimizer.Graph;
+import cashflowoptimizer.NodeType;
+
+import java.util.Random;
+
+/**
+ * Seeded random network, kept as plain arrays so benchmarks can time
+ * building a Graph separately from generating its contents.
+ *
+ * Five percent of the nodes are revenues and ten percent expenses; the rest
+ * are accounts. Every node gets `degree` outgoing edges on average.
+ */
+public class NetworkSpec {
+    public final String[] nodeIds;
+    public final NodeType[] nodeTypes;
+    public final double[] balances;
+    public final String[] edgeSources;
+    public final String[] edgeDests;
+    public final double[] edgeCapacities;
+    public final double[] edgeCosts;
+
+    public NetworkSpec(int nodeCount, int degree, CostDistribution costs, long seed) {
+        Random random = new Random(seed);
+        int revenues = Math.max(1, nodeCount / 20);
+        int expenses = Math.max(1, nodeCount / 10);
+
+        nodeIds = new String[nodeCount];
+        nodeTypes = new NodeType[nodeCount];
+        balances = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodeIds[i] = "n" + i;
+            if (i < revenues) {
+                nodeTypes[i] = NodeType.REVENUE;
+                balances[i] = 1000 + random.nextInt(5000);
+            } else if (i < revenues + expenses) {
+                nodeTypes[i] = NodeType.EXPENSE;
+                balances[i] = 0;
+            } else {
+                nodeTypes[i] = NodeType.ACCOUNT;
+                balances[i] = random.nextInt(100);
+            }
+        }
+
+        int edgeCount = nodeCount * degree;
+        edgeSources = new String[edgeCount];
+        edgeDests = new String[edgeCount];
+        edgeCapacities = new double[edgeCount];
+        edgeCosts = new double[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            int source = random.nextInt(nodeCount);
+            int dest = random.nextInt(nodeCount - 1);
+            if (dest >= source) {
+                dest++;  // No self-loops
+            }
+            edgeSources[e] = nodeIds[source];
+            edgeDests[e] = nodeIds[dest];
+            edgeCapacities[e] = 100 + random.nextInt(2000);
+            edgeCosts[e] = costs.sample(random);
+        }
+    }
+
+    public Graph toGraph() {
+        Graph graph = new Graph();
+        addNodes(graph);
+        addEdges(graph);
+        return graph;
+    }
+
+    public void addNodes(Graph graph) {
+        for (int i = 0; i < nodeIds.length; i++) {
+            graph.addNode(nodeIds[i], nodeTypes[i], balances[i]);
+        }
+    }
+
+    public void addEdges(Graph graph) {
+        for (int e = 0; e < edgeSources.length; e++) {
+            graph.addEdge(edgeSources[e], edgeDests[e], edgeCapacities[e], edgeCosts[e]);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package cashflowoptimizer.benchmarks;
+
+import cashflowoptimizer.CashFlowOptimizer;
+import cashflowoptimizer.Log;
+import cashflowoptimizer.LogLevel;
+import cashflowoptimizer.OptimizationMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One iteration of the full CashFlowOptimizer.optimize loop, including
+ * action selection, the per-pair solves and Q-updates. Results are not saved,
+ * so no file I/O is measured.
+ * The optimizer's per-iteration log messages are disabled while measuring.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class OptimizerBenchmark {
+    @Param({"100", "1000"})
+    public int nodeCount;
+
+    @Param({"4", "16"})
+    public int degree;
+
+    @Param({"UNIFORM", "HEAVY_TAILED"})
+    public CostDistribution costs;
+
+    @Param({"PAIRWISE", "PARALLEL_PAIRWISE", "SINGLE_PASS"})
+    public OptimizationMode mode;
+
+    private CashFlowOptimizer optimizer;
+    private LogLevel logLevel;
+
+    @Setup
+    public void setUp() {
+        NetworkSpec spec = new NetworkSpec(nodeCount, degree, costs, 42);
+        optimizer = new CashFlowOptimizer();
+        for (int i = 0; i < spec.nodeIds.length; i++) {
+            optimizer.addNode(spec.nodeIds[i], spec.nodeTypes[i], spec.balances[i]);
+        }
+        for (int e = 0; e < spec.edgeSources.length; e++) {
+            optimizer.addEdge(spec.edgeSources[e], spec.edgeDests[e], spec.edgeCapacities[e], spec.edgeCosts[e]);
+        }
+        optimizer.setOptimizationMode(mode);
+        optimizer.setRandomSeed(42);
+        optimizer.setAutosave(false);
+        // Every call would otherwise be answered from the solve cache after the first
+        optimizer.setSolveCache(null);
+
+        logLevel = Log.getLevel();
+        Log.setLevel(LogLevel.WARN);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Log.setLevel(logLevel);
+    }
+
+    @Benchmark
+    public double optimize() {
+        optimizer.optimize(1);
+        return optimizer.getBestTotalCost();
+    }
+}
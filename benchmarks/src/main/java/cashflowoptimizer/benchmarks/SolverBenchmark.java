@@ -0,0 +1,56 @@
+package cashflowoptimizer.benchmarks;
+
+import cashflowoptimizer.FlowSolver;
+import cashflowoptimizer.Graph;
+import cashflowoptimizer.ResidualWorkspace;
+import cashflowoptimizer.SolverType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One min-cost max-flow solve from the first revenue to the last expense.
+ * The workspace is reset before each solve, so every invocation starts from
+ * the same balances.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SolverBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int nodeCount;
+
+    @Param({"4", "16"})
+    public int degree;
+
+    @Param({"UNIFORM", "HEAVY_TAILED"})
+    public CostDistribution costs;
+
+    @Param({"SUCCESSIVE_SHORTEST_PATH"})
+    public SolverType solverType;
+
+    private ResidualWorkspace workspace;
+    private FlowSolver solver;
+    private String sourceId;
+    private String sinkId;
+
+    @Setup
+    public void setUp() {
+        NetworkSpec spec = new NetworkSpec(nodeCount, degree, costs, 42);
+        Graph graph = spec.toGraph();
+        workspace = new ResidualWorkspace(graph);
+        solver = solverType.create(workspace);
+        sourceId = spec.nodeIds[0];
+        sinkId = spec.nodeIds[Math.max(1, nodeCount / 20) + Math.max(1, nodeCount / 10) - 1];
+    }
+
+    @Benchmark
+    public double computeMinCostMaxFlow() {
+        workspace.reset();
+        solver.computeMinCostMaxFlow(sourceId, sinkId);
+        return solver.getTotalCost();
+    }
+}
@@ -1,13 +1,25 @@
 // Action.java
 package cashflowoptimizer;
 
+import java.util.Arrays;
+
 public class Action {
     private String sourceNodeId;
     private String sinkNodeId;
+    private int[] route;
     
     public Action(String sourceNodeId, String sinkNodeId) {
+        this(sourceNodeId, sinkNodeId, null);
+    }
+    
+    /**
+     * Creates an action that sends funds along one fixed route
+     * @param route Graph edge indices from source to sink, or null to let the flow solver choose
+     */
+    public Action(String sourceNodeId, String sinkNodeId, int[] route) {
         this.sourceNodeId = sourceNodeId;
         this.sinkNodeId = sinkNodeId;
+        this.route = route;
     }
     
     public String getSourceNodeId() {
@@ -18,8 +30,19 @@ public class Action {
         return sinkNodeId;
     }
     
+    /**
+     * Gets the edges this action routes through; the array must not be modified
+     * @return Graph edge indices from source to sink, or null for a whole-pair action
+     */
+    public int[] getRoute() {
+        return route;
+    }
+    
     @Override
     public String toString() {
+        if (route != null) {
+            return sourceNodeId + "->" + sinkNodeId + " via " + Arrays.toString(route);
+        }
         return sourceNodeId + "->" + sinkNodeId;
     }
     
@@ -30,11 +53,13 @@ public class Action {
         
         Action other = (Action) obj;
         return sourceNodeId.equals(other.sourceNodeId) && 
-               sinkNodeId.equals(other.sinkNodeId);
+               sinkNodeId.equals(other.sinkNodeId) &&
+               Arrays.equals(route, other.route);
     }
     
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        int hash = 31 * sourceNodeId.hashCode() + sinkNodeId.hashCode();
+        return route == null ? hash : 31 * hash + Arrays.hashCode(route);
     }
 }
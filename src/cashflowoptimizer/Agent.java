@@ -0,0 +1,35 @@
+package cashflowoptimizer;
+
+import java.util.List;
+
+/**
+ * Learning policy that CashFlowOptimizer consults for which revenue/expense
+ * transfer to make and trains with the resulting costs.
+ */
+public interface Agent {
+    /**
+     * Picks one of the possible actions epsilon-greedily.
+     * @return The chosen action, or null if there are none
+     */
+    Action selectAction(State state, List<Action> possibleActions);
+
+    /**
+     * Learns from one transition with the Q-learning target
+     * reward + discountFactor * max Q(nextState, nextActions).
+     */
+    void updateQValue(State state, Action action, double reward, State nextState, List<Action> nextActions);
+
+    void decreaseExplorationRate(double factor);
+
+    void setExplorationRate(double rate);
+
+    double getExplorationRate();
+
+    void setSeed(long seed);
+
+    boolean hasImproved();
+
+    void save(String path);
+
+    void load(String path);
+}
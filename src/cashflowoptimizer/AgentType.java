@@ -0,0 +1,21 @@
+package cashflowoptimizer;
+
+/**
+ * Learning agents that CashFlowOptimizer can pick at runtime.
+ */
+public enum AgentType {
+    TABULAR,  // RLAgent: one Q-value per visited state and action
+    LINEAR;   // LinearQAgent: linear model over graph features
+
+    public Agent create(Graph graph, StateDiscretizer discretizer,
+                        double learningRate, double discountFactor, double explorationRate) {
+        switch (this) {
+            case LINEAR:
+                return new LinearQAgent(new FeatureExtractor(graph, discretizer),
+                                        learningRate, discountFactor, explorationRate);
+            case TABULAR:
+            default:
+                return new RLAgent(learningRate, discountFactor, explorationRate);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package cashflowoptimizer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Replaces files atomically. The content is written to a temporary file in
+ * the target's directory, synced to disk and then moved over the target, so
+ * readers and a crash see either the old file or the complete new one.
+ */
+final class AtomicFile {
+    interface ChannelWriter {
+        /**
+         * Writes the content. Streams wrapped around the channel must be
+         * flushed, not closed, so the channel can still be synced.
+         */
+        void write(FileChannel channel) throws IOException;
+    }
+
+    private AtomicFile() {
+    }
+
+    static void write(Path path, ChannelWriter writer) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writer.write(channel);
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
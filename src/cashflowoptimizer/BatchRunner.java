@@ -0,0 +1,271 @@
+package cashflowoptimizer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Optimizes many scenario files without a display, several at a time, and
+ * writes one CSV row per scenario as soon as it finishes.
+ *
+ * Usage: java -cp out cashflowoptimizer.BatchRunner [options] input...
+ *
+ * Each input is a directory, whose .json and .bin files are all scenarios,
+ * or a glob such as "scenarios/**.json". JSON scenarios use the
+ * financial_data.json layout and .bin files are GraphSnapshot files.
+ * Options:
+ * <pre>
+ *   --threads N          Scenarios optimized at once (all processors)
+ *   --iterations N       Optimization iterations per scenario (10)
+ *   --mode MODE          OptimizationMode (PAIRWISE)
+ *   --solver SOLVER      SolverType (SUCCESSIVE_SHORTEST_PATH)
+ *   --parallelism N      Threads per scenario in PARALLEL_PAIRWISE mode (1)
+ *   --seed N             Random seed of every scenario (42)
+ *   --out FILE           Summary CSV (data/batch-results.csv)
+ *   --results DIR        Also save each scenario's transactions as JSON here
+ *   --verbose true       Also log the optimizers' per-iteration progress
+ * </pre>
+ * A scenario that cannot be read or fails is recorded with its error and
+ * the batch carries on. The exit status is 1 if any scenario failed.
+ */
+public class BatchRunner {
+    private static final String HEADER = "scenario,status,nodes,edges,loadMs,optimizeMs,totalCost,transactions,error";
+
+    private final int threads;
+    private final int iterations;
+    private final OptimizationMode mode;
+    private final SolverType solverType;
+    private final int parallelism;
+    private final long seed;
+    private final Path resultsDirectory;
+
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public BatchRunner(int threads, int iterations, OptimizationMode mode, SolverType solverType,
+                       int parallelism, long seed, Path resultsDirectory) {
+        if (threads <= 0 || iterations <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Threads, iterations and parallelism must be positive");
+        }
+        this.threads = threads;
+        this.iterations = iterations;
+        this.mode = mode;
+        this.solverType = solverType;
+        this.parallelism = parallelism;
+        this.seed = seed;
+        this.resultsDirectory = resultsDirectory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                inputs.add(args[i]);
+            } else if (i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                System.out.println("Missing value for " + args[i]);
+                return;
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.out.println("Usage: BatchRunner [--threads N] [--iterations N] [--mode MODE] [--solver SOLVER]");
+            System.out.println("                   [--parallelism N] [--seed N] [--out FILE] [--results DIR]");
+            System.out.println("                   [--verbose true] <directory or glob>...");
+            return;
+        }
+
+        BatchRunner runner;
+        try {
+            String results = options.get("results");
+            runner = new BatchRunner(
+                    Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                    Integer.parseInt(options.getOrDefault("iterations", "10")),
+                    OptimizationMode.valueOf(options.getOrDefault("mode", "PAIRWISE")),
+                    SolverType.valueOf(options.getOrDefault("solver", "SUCCESSIVE_SHORTEST_PATH")),
+                    Integer.parseInt(options.getOrDefault("parallelism", "1")),
+                    Long.parseLong(options.getOrDefault("seed", "42")),
+                    results == null ? null : Paths.get(results));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid option: " + e.getMessage());
+            return;
+        }
+        Path out = Paths.get(options.getOrDefault("out", "data/batch-results.csv"));
+        boolean verbose = Boolean.parseBoolean(options.getOrDefault("verbose", "false"));
+
+        if (!verbose) {
+            // Only problems, not the optimizers' per-iteration progress
+            Log.setLevel(LogLevel.WARN);
+        }
+        long start = System.nanoTime();
+        runner.run(inputs, out, System.out);
+        Log.flush();
+        System.out.printf("Ran %d scenarios (%d failed) in %.1f s; results saved to: %s\n", runner.getCompleted(),
+                          runner.getFailed(), (System.nanoTime() - start) / 1e9, out);
+        if (runner.getFailed() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Optimizes every scenario the inputs match and streams a summary row for
+     * each to the output file, in the order the scenarios finish.
+     * @param progress Receives one line per finished scenario, may be null
+     */
+    public void run(List<String> inputs, Path out, PrintStream progress) throws IOException {
+        if (out.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(out.toAbsolutePath().getParent());
+        }
+        if (resultsDirectory != null) {
+            Files.createDirectories(resultsDirectory);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // Bounds the scenarios queued ahead of the workers, so huge directories are listed as they free up
+        Semaphore queued = new Semaphore(threads * 2);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            writer.println(HEADER);
+            writer.flush();
+            for (String input : inputs) {
+                try (Stream<Path> scenarios = scenarios(input)) {
+                    Iterator<Path> iterator = scenarios.iterator();
+                    while (iterator.hasNext()) {
+                        Path scenario = iterator.next();
+                        queued.acquireUninterruptibly();
+                        pool.execute(() -> {
+                            try {
+                                String row = runScenario(scenario);
+                                synchronized (writer) {
+                                    writer.println(row);
+                                    writer.flush();
+                                }
+                                if (progress != null) {
+                                    progress.println(row);
+                                }
+                            } finally {
+                                queued.release();
+                            }
+                        });
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    completed.incrementAndGet();
+                    failed.incrementAndGet();
+                    synchronized (writer) {
+                        writer.println(row(input, "FAILED", null, 0, 0, 0, 0, "Cannot list input: " + e.getMessage()));
+                        writer.flush();
+                    }
+                }
+            }
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    private String runScenario(Path scenario) {
+        CashFlowOptimizer optimizer = new CashFlowOptimizer();
+        optimizer.setAutosave(false);
+        optimizer.setOptimizationMode(mode);
+        optimizer.setSolverType(solverType);
+        optimizer.setParallelism(parallelism);
+        optimizer.setRandomSeed(seed);
+        Graph graph = optimizer.getGraph();
+        completed.incrementAndGet();
+
+        long start = System.nanoTime();
+        double loadNanos = 0;
+        try {
+            if (scenario.getFileName().toString().endsWith(".bin")) {
+                GraphSnapshot.read(scenario, graph);
+            } else {
+                FinancialDataFile.readGraph(scenario, graph);
+            }
+            loadNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            optimizer.optimize(iterations);
+            double optimizeNanos = System.nanoTime() - start;
+            if (optimizer.getCostHistory().isEmpty()) {
+                failed.incrementAndGet();
+                return row(scenario.toString(), "FAILED", graph, loadNanos, optimizeNanos, 0, 0,
+                           "Needs at least one revenue and one expense node");
+            }
+
+            if (resultsDirectory != null) {
+                String name = scenario.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+                FinancialDataFile.write(resultsDirectory.resolve(name + ".json"), graph, optimizer.getBestTransactions(),
+                                        optimizer.getCostHistory(), optimizer.getBestTotalCost(),
+                                        optimizer.getAgent().hasImproved());
+            }
+            return row(scenario.toString(), "OK", graph, loadNanos, optimizeNanos, optimizer.getBestTotalCost(),
+                       optimizer.getBestTransactions().size(), "");
+        } catch (IOException | RuntimeException | OutOfMemoryError | StackOverflowError e) {
+            failed.incrementAndGet();
+            if (loadNanos == 0) {
+                loadNanos = System.nanoTime() - start;
+            }
+            String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            return row(scenario.toString(), "FAILED", graph, loadNanos, 0, 0, 0, message);
+        }
+    }
+
+    private static String row(String scenario, String status, Graph graph, double loadNanos, double optimizeNanos,
+                              double totalCost, int transactions, String error) {
+        return String.format(Locale.ROOT, "%s,%s,%d,%d,%.1f,%.1f,%.2f,%d,%s",
+                             csv(scenario), status, graph == null ? 0 : graph.getNodeCount(),
+                             graph == null ? 0 : graph.getEdgeCount(), loadNanos / 1e6, optimizeNanos / 1e6,
+                             totalCost, transactions, csv(error));
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // Scenario files of a directory, or the files a glob matches below its fixed leading directories
+    private static Stream<Path> scenarios(String input) throws IOException {
+        String fixed = input.replaceAll("[*?\\[{].*$", "");
+        if (fixed.equals(input)) {
+            Path file = Paths.get(input);
+            if (!Files.exists(file)) {
+                throw new NoSuchFileException(input, null, "No such file or directory");
+            }
+            if (!Files.isDirectory(file)) {
+                return Stream.of(file);
+            }
+            return Files.list(file).filter(scenario -> Files.isRegularFile(scenario) && isScenario(scenario));
+        }
+
+        // Everything before the last separator ahead of the first wildcard is a plain directory
+        Path base = Paths.get(fixed + "x").getParent();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+        Path root = base == null ? Paths.get(".") : base;
+        return Files.walk(root)
+                    .filter(file -> Files.isRegularFile(file)
+                            && matcher.matches(base == null ? root.relativize(file) : file));
+    }
+
+    private static boolean isScenario(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".json") || name.endsWith(".bin");
+    }
+}
@@ -0,0 +1,74 @@
+package cashflowoptimizer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * FlowSolver that answers from a SolveCache when it can and otherwise runs
+ * the solver of its type, which it creates on the first miss. Only solves
+ * that start from the workspace's base state are cached, so callers reset
+ * the workspace first as the optimizer does; solves on a residual state left
+ * by earlier ones go straight to the solver.
+ */
+public class CachingFlowSolver implements FlowSolver {
+    private final SolverType solverType;
+    private final ResidualWorkspace workspace;
+    private final SolveCache cache;
+    private FlowSolver solver;
+
+    private double totalCost;
+    private double totalFlow;
+    private List<TransactionRecord> transactions;
+
+    public CachingFlowSolver(SolverType solverType, ResidualWorkspace workspace, SolveCache cache) {
+        this.solverType = solverType;
+        this.workspace = workspace;
+        this.cache = cache;
+        this.transactions = Collections.emptyList();
+    }
+
+    @Override
+    public void computeMinCostMaxFlow(String sourceId, String sinkId) {
+        Graph graph = workspace.getGraph();
+        boolean cacheable = workspace.isAtBase() && graph.getNodeIndex(sourceId) != -1
+                && graph.getNodeIndex(sinkId) != -1;
+        SolveCache.Key key = null;
+        if (cacheable) {
+            key = new SolveCache.Key(workspace.getFingerprint(), sourceId, sinkId, solverType);
+            SolveCache.Entry entry = cache.get(key);
+            if (entry != null) {
+                entry.replay(workspace);
+                totalCost = entry.totalCost;
+                totalFlow = entry.totalFlow;
+                transactions = entry.transactions;
+                return;
+            }
+        }
+
+        if (solver == null) {
+            solver = solverType.create(workspace);
+        }
+        solver.computeMinCostMaxFlow(sourceId, sinkId);
+        totalCost = solver.getTotalCost();
+        totalFlow = solver.getTotalFlow();
+        transactions = solver.getTransactions();
+        if (cacheable) {
+            cache.put(key, new SolveCache.Entry(totalCost, totalFlow, transactions, workspace));
+        }
+    }
+
+    @Override
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    @Override
+    public double getTotalFlow() {
+        return totalFlow;
+    }
+
+    @Override
+    public List<TransactionRecord> getTransactions() {
+        return transactions;
+    }
+}
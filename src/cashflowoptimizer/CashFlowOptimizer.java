@@ -1,34 +1,97 @@
 package cashflowoptimizer;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
+import java.nio.file.Paths;
 public class CashFlowOptimizer {
+    // Reserved node IDs used by the single-pass mode
+    private static final String SUPER_SOURCE_ID = "__super_source__";
+    private static final String SUPER_SINK_ID = "__super_sink__";
+    
     private Graph graph;
-    private RLAgent agent;
+    private Agent agent;
+    private AgentType agentType;
     private List<TransactionRecord> bestTransactions;
     private double bestTotalCost;
     private boolean hasRun;
     private List<Double> costHistory;
+    private SolverType solverType;
+    private OptimizationMode optimizationMode;
+    private int parallelism;
+    private StateDiscretizer stateDiscretizer;
+    private RouteGenerator routeGenerator;
+    private SolveCache solveCache;
+    private boolean autosave;
+    private String dataPath;
+    private String journalDirectory;
+    private FsyncPolicy fsyncPolicy;
+    private TransactionJournal journal;
+    private String ownedJournalDirectory;  // Directory whose history this optimizer recovered or started
+    private long journaledStructureVersion;
     
     public CashFlowOptimizer() {
         graph = new Graph();
         agent = new RLAgent(0.1, 0.9, 0.3);  // learning rate, discount factor, exploration rate
+        agentType = AgentType.TABULAR;
         bestTransactions = new ArrayList<>();
         bestTotalCost = Double.MAX_VALUE;
         hasRun = false;
         costHistory = new ArrayList<>();
+        solverType = SolverType.SUCCESSIVE_SHORTEST_PATH;
+        optimizationMode = OptimizationMode.PAIRWISE;
+        parallelism = Runtime.getRuntime().availableProcessors();
+        stateDiscretizer = new StateDiscretizer();
+        solveCache = new SolveCache();
+        autosave = true;
+        dataPath = "data/financial_data.json";
+        journalDirectory = "data/journal";
+        fsyncPolicy = FsyncPolicy.ALWAYS;
+    }
+    
+    /**
+     * Gets the graph being optimised, for bulk loading
+     * @return The optimizer's graph
+     */
+    public Graph getGraph() {
+        return graph;
     }
     
     public void addNode(String nodeId, NodeType type, double balance) {
+        long version = graph.getStructureVersion();
         graph.addNode(nodeId, type, balance);
+        if (graph.getStructureVersion() != version && isJournalCurrent(version)) {
+            journal.appendNode(nodeId, type, balance);
+            commitJournal();
+        }
     }
     
     public boolean addEdge(String sourceId, String destId, double capacity, double cost) {
-        return graph.addEdge(sourceId, destId, capacity, cost);
+        long version = graph.getStructureVersion();
+        boolean added = graph.addEdge(sourceId, destId, capacity, cost);
+        if (added && isJournalCurrent(version)) {
+            journal.appendEdge(sourceId, destId, capacity, cost);
+            commitJournal();
+        }
+        return added;
+    }
+    
+    public boolean updateEdge(String sourceId, String destId, double capacity, double cost) {
+        int edge = graph.findEdge(sourceId, destId);
+        if (edge == -1) {
+            return false;
+        }
+        long version = graph.getStructureVersion();
+        graph.updateEdge(edge, capacity, cost);
+        if (isJournalCurrent(version)) {
+            journal.appendEdgeUpdate(edge, capacity, cost);
+            commitJournal();
+        }
+        return true;
     }
     
     public void optimize(int iterations) {
         if (iterations <= 0) {
-            System.out.println("Number of iterations must be positive.");
+            Log.warn("Number of iterations must be positive.");
             return;
         }
         
@@ -46,97 +109,385 @@ public class CashFlowOptimizer {
         }
         
         if (revenueNodes.isEmpty() || expenseNodes.isEmpty()) {
-            System.out.println("Need at least one revenue source and one expense destination.");
+            Log.warn("Need at least one revenue source and one expense destination.");
             return;
         }
         
         hasRun = true;
         costHistory.clear();
         
-        for (int i = 0; i < iterations; i++) {
-            // For each revenue-expense pair, determine optimal flow
-            double iterationCost = 0;
-            
-            for (String revenueId : revenueNodes) {
-                for (String expenseId : expenseNodes) {
-                    // Get current state
-                    Map<String, Double> balances = new HashMap<>();
-                    for (String nodeId : graph.getNodeIds()) {
-                        balances.put(nodeId, graph.getBalance(nodeId));
-                    }
-                    State currentState = new State(balances);
-                    
-                    // Create action for this revenue-expense pair
-                    Action action = new Action(revenueId, expenseId);
-                    List<Action> possibleActions = new ArrayList<>();
-                    possibleActions.add(action);
-                    
-                    // Check if this is the best action according to Q-learning
-                    Action selectedAction = agent.selectAction(currentState, possibleActions);
-                    
-                    if (selectedAction != null) {
-                        // Create a temporary graph for simulation
-                        Graph tempGraph = graph.copy();
-                        
+        // One residual workspace and solver serve every simulation; reset() undoes each one
+        ResidualWorkspace workspace;
+        if (optimizationMode == OptimizationMode.SINGLE_PASS) {
+            workspace = new ResidualWorkspace(buildSinglePassGraph(revenueNodes, expenseNodes));
+        } else {
+            workspace = new ResidualWorkspace(graph);
+        }
+        FlowSolver solver = solverType.create(workspace, solveCache);
+        if (agent instanceof LinearQAgent) {
+            ((LinearQAgent) agent).setWorkspace(workspace);
+        }
+        
+        // Parallel workers each get their own workspace over the same frozen topology
+        boolean parallelPairs = optimizationMode == OptimizationMode.PARALLEL_PAIRWISE && canBatchPairs();
+        if (optimizationMode == OptimizationMode.PARALLEL_PAIRWISE && !parallelPairs) {
+            Log.info("The agent's Q-values are shared between pairs; running the pairs sequentially.");
+        }
+        ForkJoinPool pool = null;
+        ThreadLocal<PairSimulator> simulators = null;
+        if (parallelPairs) {
+            pool = new ForkJoinPool(parallelism);
+            simulators = ThreadLocal.withInitial(() ->
+                    new PairSimulator(new ResidualWorkspace(graph), solverType, solveCache, stateDiscretizer));
+        }
+        
+        try {
+            for (int i = 0; i < iterations; i++) {
+                boolean lastIteration = i == iterations - 1;
+                double iterationCost;
+                if (optimizationMode == OptimizationMode.SINGLE_PASS) {
+                    iterationCost = optimizeSinglePass(workspace, solver, lastIteration);
+                } else if (parallelPairs) {
+                    iterationCost = optimizeParallelPairwise(pool, simulators, revenueNodes, expenseNodes, lastIteration);
+                } else {
+                    iterationCost = optimizePairwise(workspace, solver, revenueNodes, expenseNodes, lastIteration);
+                }
+                
+                costHistory.add(iterationCost);
+                
+                // Decrease exploration rate over time
+                agent.decreaseExplorationRate(0.95);
+                
+                // Formatted on the logging thread, off the optimization loop
+                int iteration = i + 1;
+                double explorationRate = agent.getExplorationRate();
+                Log.info(() -> String.format("Iteration %d: Total Cost = $%.2f, Exploration Rate = %.2f", 
+                                             iteration, iterationCost, explorationRate));
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            if (agent instanceof LinearQAgent) {
+                ((LinearQAgent) agent).setWorkspace(null);
+            }
+        }
+        
+        // Save optimization results
+        if (autosave && journalDirectory == null) {
+            saveOptimizationData();
+        } else if (autosave) {
+            TransactionJournal results = openJournal();
+            if (results != null) {
+                results.appendResult(bestTransactions, costHistory, bestTotalCost);
+                commitJournal();
+            }
+        }
+    }
+
+    /**
+     * Trains the agent on multi-step episodes spread over the parallelism
+     * setting's worker threads, without changing the graph.
+     * @param episodes Number of episodes to run
+     */
+    public void trainParallel(int episodes) {
+        if (!(agent instanceof RLAgent)) {
+            Log.warn("Parallel training needs a tabular agent.");
+            return;
+        }
+        ParallelTrainer trainer = new ParallelTrainer(graph, (RLAgent) agent);
+        trainer.setSolverType(solverType);
+        trainer.setStateDiscretizer(stateDiscretizer);
+        trainer.setThreads(parallelism);
+        trainer.train(episodes);
+        
+        double episodesPerSecond = trainer.getEpisodesPerSecond();
+        double explorationRate = agent.getExplorationRate();
+        int threads = parallelism;
+        Log.info(() -> String.format("Trained %d episodes on %d threads (%.1f episodes/s), Exploration Rate = %.2f",
+                                     episodes, threads, episodesPerSecond, explorationRate));
+    }
+    
+    // For each revenue-expense pair, determine optimal flow
+    private double optimizePairwise(ResidualWorkspace workspace, FlowSolver mcmf,
+                                    List<String> revenueNodes, List<String> expenseNodes, boolean lastIteration) {
+        double iterationCost = 0;
+        
+        for (String revenueId : revenueNodes) {
+            for (String expenseId : expenseNodes) {
+                // Get current state
+                State currentState = State.of(graph, stateDiscretizer);
+                
+                // Create the actions for this revenue-expense pair
+                List<Action> possibleActions = actionsFor(revenueId, expenseId);
+                
+                // Roll the workspace back to the graph's balances for this simulation
+                workspace.reset();
+                
+                // Check if this is the best action according to Q-learning
+                Action selectedAction = agent.selectAction(currentState, possibleActions);
+                
+                if (selectedAction != null) {
+                    double flowCost;
+                    List<TransactionRecord> transactions;
+                    if (selectedAction.getRoute() != null) {
+                        transactions = new ArrayList<>();
+                        flowCost = pushAlongRoute(workspace, selectedAction, transactions);
+                    } else {
                         // Run Min-Cost Max-Flow algorithm
-                        MinCostMaxFlow mcmf = new MinCostMaxFlow(tempGraph);
                         mcmf.computeMinCostMaxFlow(selectedAction.getSourceNodeId(), 
                                                   selectedAction.getSinkNodeId());
+                        flowCost = mcmf.getTotalCost();
+                        transactions = mcmf.getTransactions();
+                    }
+                    iterationCost += flowCost;
+                    
+                    // // Update balances based on flow
+                    // for (TransactionRecord tr : mcmf.getTransactions()) {
+                    //     String sourceId = tr.getSourceNode();
+                    //     String destId = tr.getDestNode();
+                    //     double amount = tr.getAmount();
                         
-                        double flowCost = mcmf.getTotalCost();
-                        iterationCost += flowCost;
-                        
-                        // // Update balances based on flow
-                        // for (TransactionRecord tr : mcmf.getTransactions()) {
-                        //     String sourceId = tr.getSourceNode();
-                        //     String destId = tr.getDestNode();
-                        //     double amount = tr.getAmount();
-                            
-                        //     // Update balances in the actual graph
-                        //     graph.setBalance(sourceId, graph.getBalance(sourceId) - amount);
-                        //     graph.setBalance(destId, graph.getBalance(destId) + amount);
-                        // }
-                        
-                        // Create next state
-                        Map<String, Double> nextBalances = new HashMap<>();
-                        for (String nodeId : graph.getNodeIds()) {
-                            nextBalances.put(nodeId, tempGraph.getBalance(nodeId));
-                        }
-                        State nextState = new State(nextBalances);
-                        
-                        // Calculate reward (negative cost is better)
-                        double reward = -flowCost;
+                    //     // Update balances in the actual graph
+                    //     graph.setBalance(sourceId, graph.getBalance(sourceId) - amount);
+                    //     graph.setBalance(destId, graph.getBalance(destId) + amount);
+                    // }
+                    
+                    // Create next state
+                    State nextState = State.of(workspace, stateDiscretizer);
+                    
+                    // Calculate reward (negative cost is better)
+                    double reward = -flowCost;
 
-                        
-                        
+                    
+                    
 
-                        
-                        // Update Q-values
-                        agent.updateQValue(currentState, selectedAction, reward, nextState, possibleActions);
-                        
-                        // If this is the best flow, remember it
-                        if (i == iterations - 1 || flowCost < bestTotalCost) {
-                            bestTotalCost = flowCost;
-                            bestTransactions = new ArrayList<>(mcmf.getTransactions());
-                        }
+                    
+                    // Update Q-values
+                    agent.updateQValue(currentState, selectedAction, reward, nextState, possibleActions);
+                    
+                    // If this is the best flow, remember it
+                    if (lastIteration || flowCost < bestTotalCost) {
+                        bestTotalCost = flowCost;
+                        bestTransactions = new ArrayList<>(transactions);
                     }
                 }
             }
+        }
+        
+        return iterationCost;
+    }
+    
+    /**
+     * Same allocation as optimizePairwise, with the flow solves run on the pool.
+     * Every pair in an iteration starts from the graph's balances, so the
+     * solves are independent. Action selection and the Q-value updates stay
+     * on this thread in pair order, which keeps the agent's random stream and
+     * Q-table identical to a sequential run. All actions are selected before
+     * the first update, so this is only used when canBatchPairs holds.
+     */
+    private double optimizeParallelPairwise(ForkJoinPool pool, ThreadLocal<PairSimulator> simulators,
+                                            List<String> revenueNodes, List<String> expenseNodes, boolean lastIteration) {
+        State currentState = State.of(graph, stateDiscretizer);
+        
+        List<List<Action>> actionLists = new ArrayList<>();
+        List<Action> selectedActions = new ArrayList<>();
+        List<Callable<PairResult>> tasks = new ArrayList<>();
+        for (String revenueId : revenueNodes) {
+            for (String expenseId : expenseNodes) {
+                List<Action> possibleActions = actionsFor(revenueId, expenseId);
+                Action selectedAction = agent.selectAction(currentState, possibleActions);
+                if (selectedAction != null) {
+                    actionLists.add(possibleActions);
+                    selectedActions.add(selectedAction);
+                    tasks.add(() -> simulators.get().simulate(selectedAction));
+                }
+            }
+        }
+        
+        List<Future<PairResult>> futures = pool.invokeAll(tasks);
+        
+        double iterationCost = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            PairResult result;
+            try {
+                result = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for pair simulations", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Pair simulation failed", e.getCause());
+            }
             
-            costHistory.add(iterationCost);
+            iterationCost += result.cost;
+            agent.updateQValue(currentState, selectedActions.get(i), -result.cost, result.nextState, actionLists.get(i));
             
-            // Decrease exploration rate over time
-            agent.decreaseExplorationRate(0.95);
+            if (lastIteration || result.cost < bestTotalCost) {
+                bestTotalCost = result.cost;
+                bestTransactions = result.transactions;
+            }
+        }
+        
+        return iterationCost;
+    }
+    
+    /**
+     * Solves the whole allocation as one b-flow problem: a super-source feeds
+     * every revenue node up to its balance and every expense node drains into
+     * a super-sink. Expenses absorb whatever reaches them, as in the pairwise
+     * mode, so one solve replaces |revenue| x |expense| pairwise solves.
+     */
+    private double optimizeSinglePass(ResidualWorkspace workspace, FlowSolver mcmf, boolean lastIteration) {
+        State currentState = State.of(graph, stateDiscretizer);
+        
+        Action action = new Action(SUPER_SOURCE_ID, SUPER_SINK_ID);
+        List<Action> possibleActions = new ArrayList<>();
+        possibleActions.add(action);
+        
+        Action selectedAction = agent.selectAction(currentState, possibleActions);
+        if (selectedAction == null) {
+            return 0;
+        }
+        
+        workspace.reset();
+        mcmf.computeMinCostMaxFlow(SUPER_SOURCE_ID, SUPER_SINK_ID);
+        double flowCost = mcmf.getTotalCost();
+        
+        // Keep the real transfers; the super arcs tell how much each revenue paid and each expense received
+        List<TransactionRecord> transactions = new ArrayList<>();
+        double[] nextBalances = new double[graph.getNodeCount()];
+        for (int node = 0; node < nextBalances.length; node++) {
+            nextBalances[node] = graph.getBalance(node);
+        }
+        for (TransactionRecord tr : mcmf.getTransactions()) {
+            if (tr.getSourceNode().equals(SUPER_SOURCE_ID)) {
+                nextBalances[graph.getNodeIndex(tr.getDestNode())] -= tr.getAmount();
+            } else if (tr.getDestNode().equals(SUPER_SINK_ID)) {
+                nextBalances[graph.getNodeIndex(tr.getSourceNode())] += tr.getAmount();
+            } else {
+                transactions.add(tr);
+            }
+        }
+        State nextState = State.of(graph, nextBalances, stateDiscretizer);
+        
+        agent.updateQValue(currentState, selectedAction, -flowCost, nextState, possibleActions);
+        
+        if (lastIteration || flowCost < bestTotalCost) {
+            bestTotalCost = flowCost;
+            bestTransactions = transactions;
+        }
+        return flowCost;
+    }
+    
+    // True if no Q-value update can change another pair's selection: an
+    // unbounded table only updates the chosen pair's own entries, while an
+    // evicting table or the linear agent's shared weights affect later pairs
+    private boolean canBatchPairs() {
+        return agent instanceof RLAgent
+                && ((RLAgent) agent).getQTable().getMaxEntries() == Integer.MAX_VALUE;
+    }
+    
+    // Per-thread workspace and solver for the parallel pairwise mode
+    private static class PairSimulator {
+        private final ResidualWorkspace workspace;
+        private final FlowSolver solver;
+        private final StateDiscretizer discretizer;
+        
+        PairSimulator(ResidualWorkspace workspace, SolverType solverType, SolveCache solveCache,
+                      StateDiscretizer discretizer) {
+            this.workspace = workspace;
+            this.solver = solverType.create(workspace, solveCache);
+            this.discretizer = discretizer;
+        }
+        
+        PairResult simulate(Action action) {
+            workspace.reset();
+            if (action.getRoute() != null) {
+                List<TransactionRecord> transactions = new ArrayList<>();
+                double cost = pushAlongRoute(workspace, action, transactions);
+                return new PairResult(cost, transactions, State.of(workspace, discretizer));
+            }
+            solver.computeMinCostMaxFlow(action.getSourceNodeId(), action.getSinkNodeId());
             
-            System.out.printf("Iteration %d: Total Cost = $%.2f, Exploration Rate = %.2f\n", 
-                            i + 1, iterationCost, agent.getExplorationRate());
+            return new PairResult(solver.getTotalCost(), new ArrayList<>(solver.getTransactions()),
+                                  State.of(workspace, discretizer));
+        }
+    }
+    
+    // One action per cached K-shortest route, or a single whole-pair action for the flow solver
+    private List<Action> actionsFor(String revenueId, String expenseId) {
+        if (routeGenerator != null) {
+            return routeGenerator.getRoutes(revenueId, expenseId);
         }
+        List<Action> possibleActions = new ArrayList<>();
+        possibleActions.add(new Action(revenueId, expenseId));
+        return possibleActions;
+    }
+    
+    // Sends as much of the source's balance as the route's bottleneck allows
+    private static double pushAlongRoute(ResidualWorkspace workspace, Action action,
+                                         List<TransactionRecord> transactions) {
+        Graph graph = workspace.getGraph();
+        CsrGraph network = workspace.getNetwork();
+        int source = graph.getNodeIndex(action.getSourceNodeId());
+        int sink = graph.getNodeIndex(action.getSinkNodeId());
         
-        // Save optimization results
-        saveOptimizationData();
+        double amount = workspace.getBalance(source);
+        for (int edge : action.getRoute()) {
+            amount = Math.min(amount, workspace.getResidualCapacity(network.getForwardArc(edge)));
+        }
+        if (amount <= 0) {
+            return 0;
+        }
+        
+        double cost = 0;
+        for (int edge : action.getRoute()) {
+            int arc = network.getForwardArc(edge);
+            workspace.addFlow(arc, amount);
+            cost += network.getCost(arc) * amount;
+            transactions.add(new TransactionRecord(graph.getNodeId(network.getTail(arc)),
+                    graph.getNodeId(network.getTarget(arc)), amount, network.getCost(arc)));
+        }
+        workspace.addBalance(source, -amount);
+        workspace.addBalance(sink, amount);
+        return cost;
     }
-
+    
+    private static class PairResult {
+        private final double cost;
+        private final List<TransactionRecord> transactions;
+        private final State nextState;
+        
+        PairResult(double cost, List<TransactionRecord> transactions, State nextState) {
+            this.cost = cost;
+            this.transactions = transactions;
+            this.nextState = nextState;
+        }
+    }
+    
+    // Copy of the graph with a super-source over the revenues and a super-sink under the expenses
+    private Graph buildSinglePassGraph(List<String> revenueNodes, List<String> expenseNodes) {
+        double totalSupply = 0;
+        for (String revenueId : revenueNodes) {
+            totalSupply += Math.max(0, graph.getBalance(revenueId));
+        }
+        
+        Graph tempGraph = graph.copy();
+        tempGraph.addNode(SUPER_SOURCE_ID, NodeType.ACCOUNT, totalSupply);
+        tempGraph.addNode(SUPER_SINK_ID, NodeType.ACCOUNT, 0);
+        for (String revenueId : revenueNodes) {
+            tempGraph.addEdge(SUPER_SOURCE_ID, revenueId, Math.max(0, graph.getBalance(revenueId)), 0);
+        }
+        for (String expenseId : expenseNodes) {
+            tempGraph.addEdge(expenseId, SUPER_SINK_ID, totalSupply, 0);
+        }
+        return tempGraph;
+    }
+    
     public void applyTransactionsAndUpdateBalancesToJson(List<TransactionRecord> transactions) {
+        // Open the journal first, so a new snapshot does not already hold these transactions
+        TransactionJournal transactionJournal = autosave && journalDirectory != null ? openJournal() : null;
+        
         // Apply each transaction to update the node balances
         for (TransactionRecord tr : transactions) {
             String sourceId = tr.getSourceNode();
@@ -150,10 +501,18 @@ public class CashFlowOptimizer {
             // Add to destination
             double newDestBalance = graph.getBalance(destId) + amount;
             graph.setBalance(destId, newDestBalance);
+            
+            if (transactionJournal != null) {
+                transactionJournal.appendTransaction(tr);
+            }
         }
     
-        // Now save the updated balances to the JSON file
-        saveOptimizationData();
+        // Now save the updated balances, as journal records or by rewriting the JSON file
+        if (autosave && journalDirectory == null) {
+            saveOptimizationData();
+        } else if (transactionJournal != null) {
+            commitJournal();
+        }
     }
     
     
@@ -192,56 +551,185 @@ public class CashFlowOptimizer {
     
 private void saveOptimizationData() {
     try {
-        // Create data directory if it doesn't exist
-        File dataDir = new File("data");
-        if (!dataDir.exists()) {
-            dataDir.mkdir();
-        }
+        FinancialDataFile.write(Paths.get(dataPath), graph, bestTransactions,
+                                costHistory, bestTotalCost, agent.hasImproved());
+        System.out.println("Financial data saved to " + dataPath);
 
-        // Save financial data in JSON format
-        PrintWriter writer = new PrintWriter(new File("data/financial_data.json"));
-        writer.println("{");
-        writer.println("  \"nodes\": [");
+    } catch (IOException e) {
+        System.out.println("Error saving financial data: " + e.getMessage());
+    }
+}
 
-        List<String> nodeIds = new ArrayList<>(graph.getNodeIds());
-        for (int i = 0; i < nodeIds.size(); i++) {
-            String nodeId = nodeIds.get(i);
-            writer.printf("    {\"id\": \"%s\", \"type\": \"%s\", \"balance\": %.2f}%s\n",
-                       nodeId, graph.getNodeType(nodeId), graph.getBalance(nodeId),
-                       (i < nodeIds.size() - 1 ? "," : ""));
+    /**
+     * Replaces the graph and the last optimization results with the contents
+     * of a file written by a previous run or by GraphGenerator.writeJson.
+     * The file is streamed, so its size is limited only by the graph it holds.
+     * @param path The JSON file to read
+     * @return true if the file was read completely
+     */
+    public boolean loadFinancialData(String path) {
+        List<TransactionRecord> transactions = new ArrayList<>();
+        List<Double> history = new ArrayList<>();
+        double[] totalCost = {Double.MAX_VALUE};
+        // Parsed into a fresh graph so a failed load leaves the current one intact
+        Graph loaded = new Graph();
+        try {
+            int skipped = FinancialDataFile.readGraph(Paths.get(path), loaded, new FinancialDataFile.Handler() {
+                @Override
+                public void transaction(String sourceId, String destId, double amount, double cost) {
+                    transactions.add(new TransactionRecord(sourceId, destId, amount, cost));
+                }
+                
+                @Override
+                public void costHistory(double cost) {
+                    history.add(cost);
+                }
+                
+                @Override
+                public void totalCost(double cost) {
+                    totalCost[0] = cost;
+                }
+            });
+            if (skipped > 0) {
+                System.out.println("Skipped " + skipped + " edges with unknown nodes.");
+            }
+        } catch (IOException e) {
+            System.out.println("Error loading financial data: " + e.getMessage());
+            return false;
         }
+        
+        graph.assign(loaded);
+        bestTransactions = transactions;
+        costHistory = history;
+        bestTotalCost = totalCost[0];
+        hasRun = !history.isEmpty();
+        System.out.printf("Loaded %d nodes and %d edges from %s\n", graph.getNodeCount(), graph.getEdgeCount(), path);
+        return true;
+    }
 
-        writer.println("  ],");
-        writer.println("  \"transactions\": [");
-
-        for (int i = 0; i < bestTransactions.size(); i++) {
-            TransactionRecord tr = bestTransactions.get(i);
-            writer.printf("    {\"source\": \"%s\", \"destination\": \"%s\", \"amount\": %.2f, \"cost\": %.2f}%s\n",
-                       tr.getSourceNode(), tr.getDestNode(), tr.getAmount(), tr.getCost(),
-                       (i < bestTransactions.size() - 1 ? "," : ""));
+    /**
+     * Writes the graph to a binary snapshot, which loads much faster than
+     * the JSON data file.
+     * @param path The snapshot file to write
+     * @return true if the snapshot was written
+     */
+    public boolean saveSnapshot(String path) {
+        try {
+            GraphSnapshot.write(Paths.get(path), graph);
+            System.out.printf("Saved snapshot of %d nodes and %d edges to %s\n", graph.getNodeCount(), graph.getEdgeCount(), path);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error saving snapshot: " + e.getMessage());
+            return false;
         }
+    }
 
-        writer.println("  ],");
-        writer.println("  \"costHistory\": [");
-
-        for (int i = 0; i < costHistory.size(); i++) {
-            writer.printf("    %.2f%s\n", costHistory.get(i),
-                       (i < costHistory.size() - 1 ? "," : ""));
+    /**
+     * Replaces the graph with a snapshot written by saveSnapshot. Results of
+     * earlier optimizations are kept, since the snapshot holds only the graph.
+     * @param path The snapshot file to read
+     * @return true if the snapshot was valid and loaded
+     */
+    public boolean loadSnapshot(String path) {
+        try {
+            GraphSnapshot.read(Paths.get(path), graph);
+        } catch (IOException e) {
+            System.out.println("Error loading snapshot: " + e.getMessage());
+            return false;
         }
-
-        writer.println("  ],");
-        writer.printf("  \"totalCost\": %.2f,\n", bestTotalCost);
-        writer.println("  \"rlImproved\": " + agent.hasImproved());
-        writer.println("}");
-
-        writer.close();
-        System.out.println("Financial data saved to data/financial_data.json");
-
-    } catch (IOException e) {
-        System.out.println("Error saving financial data: " + e.getMessage());
+        System.out.printf("Loaded %d nodes and %d edges from %s\n", graph.getNodeCount(), graph.getEdgeCount(), path);
+        return true;
     }
-}
 
+    /**
+     * Replaces the graph and the last optimization result with the state
+     * recorded in the journal directory, and keeps journaling there.
+     * @return true if the directory held a snapshot to recover from
+     */
+    public boolean recoverFromJournal() {
+        if (journalDirectory == null) {
+            System.out.println("Journaling is disabled.");
+            return false;
+        }
+        closeJournal();
+        TransactionJournal recovered = new TransactionJournal(Paths.get(journalDirectory), fsyncPolicy);
+        try {
+            boolean found = recovered.recover(graph, (transactions, history, totalCost) -> {
+                bestTransactions = new ArrayList<>(transactions);
+                costHistory = new ArrayList<>(history);
+                bestTotalCost = totalCost;
+                hasRun = true;
+            });
+            if (!found) {
+                System.out.println("No journal found in " + journalDirectory);
+                recovered.close();
+                return false;
+            }
+        } catch (IOException e) {
+            Log.error("Error recovering from journal: " + e.getMessage());
+            return false;
+        }
+        journal = recovered;
+        ownedJournalDirectory = journalDirectory;
+        journaledStructureVersion = graph.getStructureVersion();
+        System.out.printf("Recovered %d nodes and %d edges from %s\n", graph.getNodeCount(), graph.getEdgeCount(), journalDirectory);
+        return true;
+    }
+    
+    /**
+     * Writes outstanding journal records and closes the journal. The next
+     * change opens it again, starting from a fresh snapshot.
+     */
+    public void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                Log.error("Error closing journal: " + e.getMessage());
+            }
+            journal = null;
+        }
+    }
+    
+    // Opens the journal on first use, and starts a new history from a
+    // snapshot if the graph was changed without being journaled. A history
+    // left by an earlier session is never replaced before it was recovered.
+    private TransactionJournal openJournal() {
+        try {
+            if (journal == null) {
+                journal = new TransactionJournal(Paths.get(journalDirectory), fsyncPolicy);
+                journal.open(graph, journalDirectory.equals(ownedJournalDirectory));
+                ownedJournalDirectory = journalDirectory;
+            } else if (graph.getStructureVersion() != journaledStructureVersion) {
+                journal.open(graph);
+            } else {
+                return journal;
+            }
+            if (hasRun) {
+                journal.appendResult(bestTransactions, costHistory, bestTotalCost);
+            }
+        } catch (IOException e) {
+            Log.error("Error opening journal: " + e.getMessage());
+            closeJournal();
+            return null;
+        }
+        journaledStructureVersion = graph.getStructureVersion();
+        return journal;
+    }
+    
+    private boolean isJournalCurrent(long versionBefore) {
+        return journal != null && versionBefore == journaledStructureVersion;
+    }
+    
+    private void commitJournal() {
+        journaledStructureVersion = graph.getStructureVersion();
+        try {
+            journal.commit();
+        } catch (IOException e) {
+            Log.error("Error writing journal: " + e.getMessage());
+        }
+    }
+    
  /**
      * Gets the list of best transactions after optimization
      * @return List of TransactionRecord objects
@@ -266,6 +754,214 @@ private void saveOptimizationData() {
         return costHistory;
     }
     
+    /**
+     * Gets whether optimize and applied transactions save the state
+     * @return true if changes are saved automatically
+     */
+    public boolean isAutosave() {
+        return autosave;
+    }
+    
+    /**
+     * Sets whether optimize and applied transactions save the state, to the
+     * journal or to the data file
+     * @param autosave false to keep results in memory only
+     */
+    public void setAutosave(boolean autosave) {
+        this.autosave = autosave;
+    }
+    
+    /**
+     * Gets the JSON file saved to when journaling is disabled
+     * @return The data file path
+     */
+    public String getDataPath() {
+        return dataPath;
+    }
+    
+    /**
+     * Sets the JSON file saved to when journaling is disabled
+     * @param dataPath The data file path
+     */
+    public void setDataPath(String dataPath) {
+        this.dataPath = dataPath;
+    }
+    
+    /**
+     * Gets the directory of the transaction journal
+     * @return The journal directory, or null if results are saved as JSON
+     */
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+    
+    /**
+     * Sets where changes and results are journaled. With null, every save
+     * rewrites the data file instead.
+     * @param journalDirectory The journal directory, or null
+     */
+    public void setJournalDirectory(String journalDirectory) {
+        closeJournal();
+        this.journalDirectory = journalDirectory;
+    }
+    
+    /**
+     * Gets when journal commits are synced to disk
+     * @return The fsync policy
+     */
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+    
+    /**
+     * Sets when journal commits are synced to disk
+     * @param fsyncPolicy The fsync policy
+     */
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        closeJournal();
+        this.fsyncPolicy = fsyncPolicy;
+    }
+    
+    /**
+     * Gets the min-cost flow engine used by optimize
+     * @return The current solver type
+     */
+    public SolverType getSolverType() {
+        return solverType;
+    }
+    
+    /**
+     * Selects the min-cost flow engine used by optimize
+     * @param solverType The solver type to use
+     */
+    public void setSolverType(SolverType solverType) {
+        this.solverType = solverType;
+    }
+    
+    /**
+     * Gets the cache that answers repeated flow solves
+     * @return The solve cache, or null if every solve runs the solver
+     */
+    public SolveCache getSolveCache() {
+        return solveCache;
+    }
+    
+    /**
+     * Sets the cache for flow solves, which may be shared with other optimizers
+     * @param solveCache The cache to use, or null to disable caching
+     */
+    public void setSolveCache(SolveCache solveCache) {
+        this.solveCache = solveCache;
+    }
+    
+    /**
+     * Gets how optimize allocates revenue to expenses
+     * @return The current optimization mode
+     */
+    public OptimizationMode getOptimizationMode() {
+        return optimizationMode;
+    }
+    
+    /**
+     * Selects how optimize allocates revenue to expenses
+     * @param optimizationMode PAIRWISE, PARALLEL_PAIRWISE or SINGLE_PASS
+     */
+    public void setOptimizationMode(OptimizationMode optimizationMode) {
+        this.optimizationMode = optimizationMode;
+    }
+    
+    /**
+     * Gets the number of worker threads used by PARALLEL_PAIRWISE and trainParallel
+     * @return The parallelism level
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    /**
+     * Sets the number of worker threads used by PARALLEL_PAIRWISE and trainParallel
+     * @param parallelism Number of threads, defaults to the available processors
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * Gets the bucket widths used to discretise balances into RL states
+     * @return The state discretizer, which can be configured in place
+     */
+    public StateDiscretizer getStateDiscretizer() {
+        return stateDiscretizer;
+    }
+    
+    /**
+     * Sets the bucket widths used to discretise balances into RL states
+     * @param stateDiscretizer The state discretizer to use
+     */
+    public void setStateDiscretizer(StateDiscretizer stateDiscretizer) {
+        this.stateDiscretizer = stateDiscretizer;
+    }
+    
+    /**
+     * Gets how many routes per revenue-expense pair the agent chooses from
+     * @return K, or 0 when each pair is one action solved by the flow solver
+     */
+    public int getRoutesPerPair() {
+        return routeGenerator == null ? 0 : routeGenerator.getK();
+    }
+    
+    /**
+     * Offers the agent the K cheapest loopless routes of each pair as separate
+     * actions, in the pairwise modes. The chosen route carries as much of the
+     * revenue's balance as its bottleneck allows. Routes are cached until an
+     * edge on them changes.
+     * @param k Routes per pair, or 0 to solve each pair with the flow solver
+     */
+    public void setRoutesPerPair(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Routes per pair must not be negative");
+        }
+        routeGenerator = k == 0 ? null : new RouteGenerator(graph, k);
+    }
+    
+    /**
+     * Gets the kind of RL agent used by optimize
+     * @return The current agent type
+     */
+    public AgentType getAgentType() {
+        return agentType;
+    }
+    
+    /**
+     * Replaces the agent with a new, untrained one of the given type. A
+     * linear agent reads features from this optimizer's graph and the
+     * current state discretizer.
+     * @param agentType The agent type to use
+     */
+    public void setAgentType(AgentType agentType) {
+        this.agent = agentType.create(graph, stateDiscretizer, 0.1, 0.9, 0.3);
+        this.agentType = agentType;
+    }
+    
+    /**
+     * Gets the RL agent that chooses which pairs to route
+     * @return The current agent
+     */
+    public Agent getAgent() {
+        return agent;
+    }
+    
+    /**
+     * Seeds the agent's exploration so repeated runs give the same results
+     * @param seed The random seed
+     */
+    public void setRandomSeed(long seed) {
+        agent.setSeed(seed);
+    }
+    
     /**
      * Gets the type of a specific node
      * @param nodeId The ID of the node
@@ -6,8 +6,7 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.OutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,7 +26,12 @@ public class CashFlowOptimizerGUI extends JFrame {
     private JComboBox<String> sourceNodeCombo;  // Made this a class field
     private JComboBox<String> destNodeCombo;    // Made this a class field
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // With arguments, or without a display, run scenario files in batch instead
+        if (args.length > 0 || GraphicsEnvironment.isHeadless()) {
+            BatchRunner.main(args);
+            return;
+        }
         EventQueue.invokeLater(new Runnable() {
             public void run() {
                 try {
@@ -68,6 +72,31 @@ public class CashFlowOptimizerGUI extends JFrame {
         createOptimizationTab();
         createResultsTab();
         createLogTab();
+        
+        restoreJournal();
+    }
+    
+    // Picks up the graph and results saved by the previous session
+    private void restoreJournal() {
+        if (!optimizer.recoverFromJournal()) {
+            return;
+        }
+        Graph graph = optimizer.getGraph();
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            String id = graph.getNodeId(node);
+            nodes.add(id);
+            nodeTableModel.addRow(new Object[]{id, graph.getNodeType(node), graph.getBalance(node)});
+        }
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            transactionTableModel.addRow(new Object[]{graph.getNodeId(graph.getEdgeSource(edge)),
+                    graph.getNodeId(graph.getEdgeDest(edge)), graph.getEdgeCapacity(edge), graph.getEdgeCost(edge)});
+        }
+        updateNodeDropdowns();
+        if (!optimizer.getBestTransactions().isEmpty()) {
+            updateResultsTable();
+        }
+        log("Restored " + graph.getNodeCount() + " nodes and " + graph.getEdgeCount() + " edges from "
+            + optimizer.getJournalDirectory());
     }
     
     private void createNodesTab() {
@@ -303,34 +332,21 @@ public class CashFlowOptimizerGUI extends JFrame {
                             SwingUtilities.invokeLater(() -> button.setEnabled(false));
                             log("Starting optimization with " + iterations + " iterations...");
                             
-                            // Create a custom output stream to redirect System.out to our log
-                            PrintStream originalOut = System.out;
-                            PrintStream customOut = new PrintStream(new OutputStream() {
-                                private StringBuilder sb = new StringBuilder();
-                                
-                                @Override
-                                public void write(int b) {
-                                    if (b == '\n') {
-                                        final String text = sb.toString();
-                                        SwingUtilities.invokeLater(new Runnable() {
-                                            public void run() {
-                                                log(text);
-                                            }
-                                        });
-                                        sb = new StringBuilder();
-                                    } else {
-                                        sb.append((char) b);
-                                    }
+                            // Show this run's log messages; other threads' messages are not ours
+                            Thread runThread = Thread.currentThread();
+                            Log.Listener listener = event -> {
+                                if (event.getThread() == runThread) {
+                                    String text = event.getMessage();
+                                    SwingUtilities.invokeLater(() -> log(text));
                                 }
-                            });
-                            
-                            System.setOut(customOut);
-                            
-                            // Run the optimization
-                            optimizer.optimize(iterations);
-                            
-                            // Restore original output
-                            System.setOut(originalOut);
+                            };
+                            Log.addListener(listener);
+                            try {
+                                optimizer.optimize(iterations);
+                            } finally {
+                                Log.flush();
+                                Log.removeListener(listener);
+                            }
                             
                             SwingUtilities.invokeLater(new Runnable() {
                                 public void run() {
@@ -0,0 +1,443 @@
+package cashflowoptimizer;
+
+import java.util.*;
+
+/**
+ * Goldberg-style cost-scaling push-relabel engine for large graphs.
+ *
+ * Capacities and costs are integerised (multiplied by capacityScale and
+ * costScale and rounded), so results are exact for amounts and costs with at
+ * most that many decimals. The solve first finds the maximum s-t flow the
+ * source balance allows with Dinic's algorithm, then turns that feasible flow
+ * into a minimum-cost one by eps-scaling refine phases. Each phase uses FIFO
+ * push/relabel with the global-update heuristic (a shortest-path ranking
+ * from the deficit nodes) and is skipped outright when price refinement shows the
+ * current flow is already eps-optimal.
+ */
+public class CostScalingPushRelabel implements FlowSolver {
+    private static final long ALPHA = 16;
+    private static final int PRICE_REFINEMENT_PASSES = 8;
+
+    private Graph graph;
+    private CsrGraph network;
+    private ResidualWorkspace workspace;
+    private boolean commitToGraph;
+    private double capacityScale;
+    private double costScale;
+    private double totalCost;
+    private double totalFlow;
+    private List<TransactionRecord> transactions;
+
+    // Integerised residual network, indexed like the CSR arcs
+    private int nodeCount;
+    private long[] residual;
+    private long[] cost;
+    private long[] price;
+    private long[] excess;
+    private int[] currentArc;
+
+    // Scratch space for the max-flow phase, global update and FIFO queue
+    private int[] level;
+    private int[] pathArcs;
+    private long[] rank;
+    private boolean[] ranked;
+    private ShortestPathQueue rankQueue;
+    private int[] queue;
+    private boolean[] queued;
+
+    public CostScalingPushRelabel(Graph graph) {
+        this(graph, 100, 100);
+    }
+
+    /**
+     * @param graph The graph to solve on
+     * @param capacityScale Multiplier that turns amounts into integers (100 = cents)
+     * @param costScale Multiplier that turns per-unit costs into integers
+     */
+    public CostScalingPushRelabel(Graph graph, double capacityScale, double costScale) {
+        this(new ResidualWorkspace(graph), capacityScale, costScale);
+        this.commitToGraph = true;
+    }
+
+    /**
+     * Creates a solver that keeps flow and balances in the given workspace
+     * and leaves the graph untouched.
+     * @param workspace The residual state to solve in
+     */
+    public CostScalingPushRelabel(ResidualWorkspace workspace) {
+        this(workspace, 100, 100);
+    }
+
+    public CostScalingPushRelabel(ResidualWorkspace workspace, double capacityScale, double costScale) {
+        if (capacityScale <= 0 || costScale <= 0) {
+            throw new IllegalArgumentException("Scale factors must be positive");
+        }
+        this.graph = workspace.getGraph();
+        this.network = workspace.getNetwork();
+        this.workspace = workspace;
+        this.commitToGraph = false;
+        this.capacityScale = capacityScale;
+        this.costScale = costScale;
+        this.totalCost = 0;
+        this.totalFlow = 0;
+        this.transactions = new ArrayList<>();
+    }
+
+    @Override
+    public void computeMinCostMaxFlow(String sourceId, String sinkId) {
+        int source = graph.getNodeIndex(sourceId);
+        int sink = graph.getNodeIndex(sinkId);
+
+        if (source == -1 || sink == -1) {
+            Log.warn("Source or sink node not found.");
+            return;
+        }
+
+        totalCost = 0;
+        totalFlow = 0;
+        transactions.clear();
+
+        long limit = Math.round(workspace.getBalance(source) * capacityScale);
+        if (source == sink || limit <= 0) {
+            return;
+        }
+
+        init();
+        long flowValue = maxFlow(source, sink, limit);
+        if (flowValue == 0) {
+            return;
+        }
+        minimiseCost();
+
+        int edgeCount = network.getEdgeCount();
+        for (int e = 0; e < edgeCount; e++) {
+            int arc = network.getForwardArc(e);
+            long initial = Math.round(Math.max(0, workspace.getResidualCapacity(arc)) * capacityScale);
+            long sent = initial - residual[arc];
+            if (sent <= 0) continue;
+
+            double amount = sent / capacityScale;
+            workspace.addFlow(arc, amount);
+            totalCost += network.getCost(arc) * amount;
+            transactions.add(new TransactionRecord(graph.getNodeId(network.getTail(arc)),
+                    graph.getNodeId(network.getTarget(arc)), amount, network.getCost(arc)));
+        }
+        totalFlow = flowValue / capacityScale;
+
+        workspace.addBalance(source, -totalFlow);
+        workspace.addBalance(sink, totalFlow);
+        if (commitToGraph) {
+            workspace.commitBalances();
+        }
+    }
+
+    @Override
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    @Override
+    public double getTotalFlow() {
+        return totalFlow;
+    }
+
+    @Override
+    public List<TransactionRecord> getTransactions() {
+        return transactions;
+    }
+
+    private void init() {
+        nodeCount = network.getNodeCount();
+        int arcCount = network.getArcCount();
+
+        residual = new long[arcCount];
+        cost = new long[arcCount];
+        price = new long[nodeCount];
+        excess = new long[nodeCount];
+        currentArc = new int[nodeCount];
+        level = new int[nodeCount];
+        pathArcs = new int[nodeCount];
+        rank = new long[nodeCount];
+        ranked = new boolean[nodeCount];
+        rankQueue = new IndexedDaryHeap();
+        queue = new int[nodeCount];
+        queued = new boolean[nodeCount];
+
+        // Costs are multiplied by n + 1 so that 1-optimality implies optimality
+        long multiplier = nodeCount + 1;
+        long maxCost = 0;
+        for (int arc = 0; arc < arcCount; arc++) {
+            if (!network.isForward(arc)) continue;
+            long scaledCost = Math.round(network.getCost(arc) * costScale);
+            maxCost = Math.max(maxCost, Math.abs(scaledCost));
+            int reverseArc = network.getReverse(arc);
+            residual[arc] = Math.round(Math.max(0, workspace.getResidualCapacity(arc)) * capacityScale);
+            residual[reverseArc] = Math.round(Math.max(0, workspace.getResidualCapacity(reverseArc)) * capacityScale);
+            cost[arc] = scaledCost;
+            cost[reverseArc] = -scaledCost;
+        }
+
+        // Prices can drift by O(n) times the largest scaled cost
+        if (maxCost > Long.MAX_VALUE / (4 * multiplier * multiplier)) {
+            throw new IllegalArgumentException("Cost range too large for integer cost scaling; lower costScale");
+        }
+        for (int arc = 0; arc < arcCount; arc++) {
+            cost[arc] *= multiplier;
+        }
+    }
+
+    // Dinic's algorithm, stopping once the limit is reached
+    private long maxFlow(int source, int sink, long limit) {
+        long flowValue = 0;
+        while (flowValue < limit && buildLevels(source, sink)) {
+            for (int u = 0; u < nodeCount; u++) {
+                currentArc[u] = network.firstArc(u);
+            }
+            while (flowValue < limit) {
+                long pushed = augment(source, sink, limit - flowValue);
+                if (pushed == 0) break;
+                flowValue += pushed;
+            }
+        }
+        return flowValue;
+    }
+
+    private boolean buildLevels(int source, int sink) {
+        Arrays.fill(level, -1);
+        level[source] = 0;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+                int v = network.getTarget(arc);
+                if (residual[arc] > 0 && level[v] == -1) {
+                    level[v] = level[u] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        return level[sink] != -1;
+    }
+
+    // Iterative DFS in the level graph; finds one blocking path per call
+    private long augment(int source, int sink, long limit) {
+        int depth = 0;
+        int u = source;
+        while (true) {
+            if (u == sink) {
+                long pushed = limit;
+                for (int i = 0; i < depth; i++) {
+                    pushed = Math.min(pushed, residual[pathArcs[i]]);
+                }
+                for (int i = 0; i < depth; i++) {
+                    int arc = pathArcs[i];
+                    residual[arc] -= pushed;
+                    residual[network.getReverse(arc)] += pushed;
+                }
+                return pushed;
+            }
+
+            boolean advanced = false;
+            for (int end = network.endArc(u); currentArc[u] < end; currentArc[u]++) {
+                int arc = currentArc[u];
+                int v = network.getTarget(arc);
+                if (residual[arc] > 0 && level[v] == level[u] + 1) {
+                    pathArcs[depth++] = arc;
+                    u = v;
+                    advanced = true;
+                    break;
+                }
+            }
+
+            if (!advanced) {
+                level[u] = -1;  // Dead end, never enter it again this phase
+                if (depth == 0) {
+                    return 0;
+                }
+                depth--;
+                u = network.getTail(pathArcs[depth]);
+                currentArc[u]++;
+            }
+        }
+    }
+
+    private void minimiseCost() {
+        long maxCost = 0;
+        for (long c : cost) {
+            maxCost = Math.max(maxCost, Math.abs(c));
+        }
+
+        // Zero prices make the feasible max flow maxCost-optimal
+        long epsilon = Math.max(maxCost, 1);
+        while (epsilon > 1) {
+            epsilon = Math.max(epsilon / ALPHA, 1);
+            if (!refinePrices(epsilon)) {
+                refine(epsilon);
+            }
+        }
+    }
+
+    private long reducedCost(int arc) {
+        return cost[arc] + price[network.getTail(arc)] - price[network.getTarget(arc)];
+    }
+
+    /**
+     * Price refinement heuristic: a bounded Bellman-Ford pass looking for
+     * prices under which the current (feasible) flow is already
+     * epsilon-optimal, i.e. no residual cycle is negative under cost + eps.
+     */
+    private boolean refinePrices(long epsilon) {
+        long[] distance = new long[nodeCount];
+        for (int pass = 0; pass < PRICE_REFINEMENT_PASSES; pass++) {
+            boolean changed = false;
+            for (int u = 0; u < nodeCount; u++) {
+                for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+                    if (residual[arc] <= 0) continue;
+                    int v = network.getTarget(arc);
+                    long candidate = distance[u] + reducedCost(arc) + epsilon;
+                    if (candidate < distance[v]) {
+                        distance[v] = candidate;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                for (int u = 0; u < nodeCount; u++) {
+                    price[u] += distance[u];
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void refine(long epsilon) {
+        // Saturate every residual arc with negative reduced cost
+        for (int u = 0; u < nodeCount; u++) {
+            for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+                long r = residual[arc];
+                if (r > 0 && reducedCost(arc) < 0) {
+                    residual[arc] = 0;
+                    residual[network.getReverse(arc)] += r;
+                    excess[u] -= r;
+                    excess[network.getTarget(arc)] += r;
+                }
+            }
+        }
+
+        globalUpdate(epsilon);
+
+        int head = 0;
+        int size = 0;
+        for (int u = 0; u < nodeCount; u++) {
+            queued[u] = excess[u] > 0;
+            if (queued[u]) {
+                queue[size++] = u;
+            }
+        }
+
+        int relabels = 0;
+        while (size > 0) {
+            int u = queue[head];
+            head = head + 1 == nodeCount ? 0 : head + 1;
+            size--;
+            queued[u] = false;
+
+            while (excess[u] > 0) {
+                int arc = currentArc[u];
+                if (arc == network.endArc(u)) {
+                    relabel(u, epsilon);
+                    if (++relabels >= nodeCount) {
+                        globalUpdate(epsilon);
+                        relabels = 0;
+                    }
+                    continue;
+                }
+
+                if (residual[arc] > 0 && reducedCost(arc) < 0) {
+                    int v = network.getTarget(arc);
+                    long delta = Math.min(excess[u], residual[arc]);
+                    residual[arc] -= delta;
+                    residual[network.getReverse(arc)] += delta;
+                    excess[u] -= delta;
+                    excess[v] += delta;
+                    if (excess[v] > 0 && !queued[v]) {
+                        queued[v] = true;
+                        queue[(head + size) % nodeCount] = v;
+                        size++;
+                    }
+                } else {
+                    currentArc[u]++;
+                }
+            }
+        }
+    }
+
+    private void relabel(int u, long epsilon) {
+        long best = Long.MIN_VALUE;
+        for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+            if (residual[arc] > 0) {
+                best = Math.max(best, price[network.getTarget(arc)] - cost[arc]);
+            }
+        }
+        if (best == Long.MIN_VALUE) {
+            throw new IllegalStateException("Node " + graph.getNodeId(u) + " has excess but no residual arcs");
+        }
+        price[u] = best - epsilon;
+        currentArc[u] = network.firstArc(u);
+    }
+
+    /**
+     * Global update heuristic: ranks every node by its eps-scaled distance to
+     * the nearest deficit node over residual arcs and lowers prices by eps per
+     * rank, which keeps the flow eps-optimal while giving every node with
+     * excess an admissible path towards a deficit. The search stops as soon
+     * as all nodes with excess are ranked; the rest get the last rank.
+     */
+    private void globalUpdate(long epsilon) {
+        Arrays.fill(rank, Long.MAX_VALUE);
+        Arrays.fill(ranked, false);
+        rankQueue.reset(nodeCount);
+
+        int unrankedActive = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            if (excess[v] < 0) {
+                rank[v] = 0;
+                rankQueue.push(v, 0);
+            } else if (excess[v] > 0) {
+                unrankedActive++;
+            }
+        }
+
+        long maxRank = 0;
+        while (!rankQueue.isEmpty() && unrankedActive > 0) {
+            int v = rankQueue.pop();
+            ranked[v] = true;
+            maxRank = rank[v];
+            if (excess[v] > 0) {
+                unrankedActive--;
+            }
+
+            // Arcs u -> v are the reverses of the arcs leaving v
+            for (int arc = network.firstArc(v), end = network.endArc(v); arc < end; arc++) {
+                int into = network.getReverse(arc);
+                int u = network.getTarget(arc);
+                if (residual[into] <= 0 || ranked[u]) continue;
+                long length = Math.max(0, Math.floorDiv(reducedCost(into), epsilon) + 1);
+                long candidate = maxRank + length;
+                if (candidate < rank[u]) {
+                    rank[u] = candidate;
+                    rankQueue.push(u, candidate);
+                }
+            }
+        }
+
+        for (int u = 0; u < nodeCount; u++) {
+            long r = ranked[u] ? rank[u] : maxRank;
+            price[u] -= epsilon * r;
+            currentArc[u] = network.firstArc(u);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package cashflowoptimizer;
+
+import java.util.Arrays;
+
+/**
+ * Frozen compressed-sparse-row form of a Graph.
+ *
+ * Every edge added through Graph.addEdge becomes two residual arcs: a forward
+ * arc with the edge capacity and cost, and a reverse arc with capacity 0 and
+ * the negated cost. Arcs leaving node u occupy the slots
+ * offsets[u] .. offsets[u + 1] - 1, in the order the edges were added.
+ * The topology is immutable; flows live in a ResidualWorkspace, so one
+ * CsrGraph can be shared by any number of solvers and threads.
+ */
+public class CsrGraph {
+    private final int nodeCount;
+    private final int edgeCount;
+    private final int[] offsets;
+    private final int[] tails;
+    private final int[] targets;
+    private final int[] reverse;
+    private final int[] arcEdge;
+    private final int[] edgeArc;
+    private final double[] capacity;
+    private final double[] cost;
+
+    CsrGraph(int nodeCount, int edgeCount, int[] edgeSources, int[] edgeDests,
+             double[] edgeCapacities, double[] edgeCosts) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        int arcCount = edgeCount * 2;
+
+        offsets = new int[nodeCount + 1];
+        tails = new int[arcCount];
+        targets = new int[arcCount];
+        reverse = new int[arcCount];
+        arcEdge = new int[arcCount];
+        edgeArc = new int[edgeCount];
+        capacity = new double[arcCount];
+        cost = new double[arcCount];
+
+        // Count out-degree in the residual graph (one forward + one reverse arc per edge)
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[edgeSources[e] + 1]++;
+            offsets[edgeDests[e] + 1]++;
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            offsets[u + 1] += offsets[u];
+        }
+
+        int[] next = Arrays.copyOf(offsets, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int u = edgeSources[e];
+            int v = edgeDests[e];
+            int forwardArc = next[u]++;
+            int reverseArc = next[v]++;
+
+            tails[forwardArc] = u;
+            targets[forwardArc] = v;
+            capacity[forwardArc] = edgeCapacities[e];
+            cost[forwardArc] = edgeCosts[e];
+
+            tails[reverseArc] = v;
+            targets[reverseArc] = u;
+            capacity[reverseArc] = 0;
+            cost[reverseArc] = -edgeCosts[e];
+
+            reverse[forwardArc] = reverseArc;
+            reverse[reverseArc] = forwardArc;
+            arcEdge[forwardArc] = e;
+            arcEdge[reverseArc] = e;
+            edgeArc[e] = forwardArc;
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getArcCount() {
+        return targets.length;
+    }
+
+    public int firstArc(int node) {
+        return offsets[node];
+    }
+
+    public int endArc(int node) {
+        return offsets[node + 1];
+    }
+
+    public int getTail(int arc) {
+        return tails[arc];
+    }
+
+    public int getTarget(int arc) {
+        return targets[arc];
+    }
+
+    public int getReverse(int arc) {
+        return reverse[arc];
+    }
+
+    public int getEdge(int arc) {
+        return arcEdge[arc];
+    }
+
+    public int getForwardArc(int edge) {
+        return edgeArc[edge];
+    }
+
+    public boolean isForward(int arc) {
+        return edgeArc[arcEdge[arc]] == arc;
+    }
+
+    public double getCapacity(int arc) {
+        return capacity[arc];
+    }
+
+    public double getCost(int arc) {
+        return cost[arc];
+    }
+}
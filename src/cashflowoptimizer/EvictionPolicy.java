@@ -0,0 +1,24 @@
+package cashflowoptimizer;
+
+/**
+ * Chooses which Q-value a bounded QTable drops when it is full. Among the
+ * sampled entries, the one with the lowest score is evicted.
+ */
+public interface EvictionPolicy {
+    // Least recently used: oldest access goes first
+    EvictionPolicy LRU = (lastAccess, visits, value) -> lastAccess;
+
+    // Least frequently used: fewest reads and writes go first
+    EvictionPolicy LFU = (lastAccess, visits, value) -> visits;
+
+    // Entries that are both rarely visited and close to zero matter least
+    EvictionPolicy LOWEST_VALUE_VISITS = (lastAccess, visits, value) -> Math.abs(value) * visits;
+
+    /**
+     * @param lastAccess Logical time of the entry's last read or write
+     * @param visits Number of reads and writes of the entry
+     * @param value The entry's Q-value
+     * @return Score of the entry; lower scores are evicted first
+     */
+    double score(long lastAccess, int visits, double value);
+}
@@ -0,0 +1,194 @@
+package cashflowoptimizer;
+
+import java.util.Arrays;
+
+/**
+ * Turns a (state, action) pair into a fixed-length feature vector for
+ * LinearQAgent. Features describe the action's source and sink: balances from
+ * the state, the residual capacity around them, and the cheapest path cost
+ * between them. Amounts are divided by the graph's largest balance or
+ * capacity and costs by its largest edge cost, so features stay near [0, 1].
+ *
+ * Residual capacities are read from the workspace set with setWorkspace, in
+ * O(degree) per node; without one they are the edge capacities. Path costs
+ * are computed from the frozen graph, and only the rows of the
+ * PATH_COST_SOURCES most recently used sources are kept.
+ */
+public class FeatureExtractor {
+    public static final int BIAS = 0;
+    public static final int SOURCE_BALANCE = 1;
+    public static final int SINK_BALANCE = 2;
+    public static final int SOURCE_CAPACITY = 3;
+    public static final int SINK_CAPACITY = 4;
+    public static final int PATH_COST = 5;
+    public static final int REACHABLE = 6;
+    public static final int DELIVERABLE = 7;
+    public static final int EXPECTED_COST = 8;
+    public static final int ACCOUNT_BALANCE = 9;
+    public static final int FEATURE_COUNT = 10;
+    public static final int PATH_COST_SOURCES = 8;
+
+    private final Graph graph;
+    private final StateDiscretizer discretizer;
+
+    private ResidualWorkspace workspace;
+
+    // Derived from the frozen graph, rebuilt when it changes
+    private CsrGraph network;
+    private double amountScale;
+    private double costScale;
+
+    // Cheapest path costs from recently used sources, least recently used replaced first
+    private final int[] pathCostSources = new int[PATH_COST_SOURCES];
+    private final double[][] pathCosts = new double[PATH_COST_SOURCES][];
+    private final long[] pathCostUses = new long[PATH_COST_SOURCES];
+    private long pathCostClock;
+
+    public FeatureExtractor(Graph graph, StateDiscretizer discretizer) {
+        this.graph = graph;
+        this.discretizer = discretizer;
+    }
+
+    /**
+     * Sets the workspace whose flows the capacity features are computed from.
+     * It is ignored while its topology differs from the graph's.
+     * @param workspace Workspace over the graph, or null for the edge capacities
+     */
+    public void setWorkspace(ResidualWorkspace workspace) {
+        this.workspace = workspace;
+    }
+
+    /**
+     * @return Scale that rewards (negative costs) should be divided by to
+     *         match the features' units
+     */
+    public double getRewardScale() {
+        refresh();
+        return amountScale * costScale;
+    }
+
+    /**
+     * Writes the features of taking action in state into out, which must
+     * have at least FEATURE_COUNT elements.
+     */
+    public void extract(State state, Action action, double[] out) {
+        refresh();
+        int source = graph.getNodeIndex(action.getSourceNodeId());
+        int sink = graph.getNodeIndex(action.getSinkNodeId());
+        Arrays.fill(out, 0, FEATURE_COUNT, 0.0);
+        out[BIAS] = 1.0;
+        if (source == -1 || sink == -1) {
+            return;
+        }
+
+        double sourceBalance = balance(state, source);
+        out[SOURCE_BALANCE] = sourceBalance / amountScale;
+        out[SINK_BALANCE] = balance(state, sink) / amountScale;
+        ResidualWorkspace residual = workspace != null && workspace.getNetwork() == network ? workspace : null;
+        double sourceCapacity = capacityOut(residual, source);
+        double sinkCapacity = capacityIn(residual, sink);
+        out[SOURCE_CAPACITY] = sourceCapacity / amountScale;
+        out[SINK_CAPACITY] = sinkCapacity / amountScale;
+
+        double pathCost = pathCostsFrom(source)[sink];
+        if (pathCost != Double.MAX_VALUE) {
+            out[PATH_COST] = pathCost / costScale;
+            out[REACHABLE] = 1.0;
+            double deliverable = Math.min(Math.max(0, sourceBalance), Math.min(sourceCapacity, sinkCapacity));
+            out[DELIVERABLE] = deliverable / amountScale;
+            out[EXPECTED_COST] = out[DELIVERABLE] * out[PATH_COST];
+        }
+
+        double accountBalance = 0;
+        int nodeCount = Math.min(state.getNodeCount(), network.getNodeCount());
+        for (int node = 0; node < nodeCount; node++) {
+            if (graph.getNodeType(node) == NodeType.ACCOUNT) {
+                accountBalance += balance(state, node);
+            }
+        }
+        out[ACCOUNT_BALANCE] = accountBalance / (amountScale * Math.max(1, nodeCount));
+    }
+
+    private double balance(State state, int node) {
+        if (node >= state.getNodeCount()) {
+            return graph.getBalance(node);
+        }
+        return state.getBucket(node) * discretizer.getBucketWidth(graph.getNodeType(node));
+    }
+
+    // Capacity left on the arcs leaving node: unused edge capacity plus flow that can be sent back
+    private double capacityOut(ResidualWorkspace residual, int node) {
+        double total = 0;
+        for (int arc = network.firstArc(node); arc < network.endArc(node); arc++) {
+            total += residual == null ? network.getCapacity(arc) : residual.getResidualCapacity(arc);
+        }
+        return total;
+    }
+
+    // Capacity left on the arcs entering node
+    private double capacityIn(ResidualWorkspace residual, int node) {
+        double total = 0;
+        for (int arc = network.firstArc(node); arc < network.endArc(node); arc++) {
+            int reverse = network.getReverse(arc);
+            total += residual == null ? network.getCapacity(reverse) : residual.getResidualCapacity(reverse);
+        }
+        return total;
+    }
+
+    private void refresh() {
+        CsrGraph current = graph.freeze();
+        if (current == network) {
+            return;
+        }
+        network = current;
+        int n = network.getNodeCount();
+        Arrays.fill(pathCosts, null);
+        amountScale = 1;
+        costScale = 1;
+        for (int node = 0; node < n; node++) {
+            amountScale = Math.max(amountScale, Math.abs(graph.getBalance(node)));
+        }
+        for (int e = 0; e < network.getEdgeCount(); e++) {
+            int arc = network.getForwardArc(e);
+            amountScale = Math.max(amountScale, network.getCapacity(arc));
+            costScale = Math.max(costScale, Math.abs(network.getCost(arc)));
+        }
+    }
+
+    // Bellman-Ford over edges with capacity; unreachable nodes keep Double.MAX_VALUE
+    private double[] pathCostsFrom(int source) {
+        int slot = 0;
+        for (int i = 0; i < PATH_COST_SOURCES; i++) {
+            if (pathCosts[i] != null && pathCostSources[i] == source) {
+                pathCostUses[i] = ++pathCostClock;
+                return pathCosts[i];
+            }
+            if (pathCosts[slot] != null && (pathCosts[i] == null || pathCostUses[i] < pathCostUses[slot])) {
+                slot = i;
+            }
+        }
+        int n = network.getNodeCount();
+        double[] distance = new double[n];
+        Arrays.fill(distance, Double.MAX_VALUE);
+        distance[source] = 0;
+        for (int round = 0; round < n - 1; round++) {
+            boolean changed = false;
+            for (int e = 0; e < network.getEdgeCount(); e++) {
+                int arc = network.getForwardArc(e);
+                int u = network.getTail(arc);
+                if (distance[u] == Double.MAX_VALUE || network.getCapacity(arc) <= 0) continue;
+                int v = network.getTarget(arc);
+                double newDist = distance[u] + network.getCost(arc);
+                if (newDist < distance[v]) {
+                    distance[v] = newDist;
+                    changed = true;
+                }
+            }
+            if (!changed) break;
+        }
+        pathCostSources[slot] = source;
+        pathCosts[slot] = distance;
+        pathCostUses[slot] = ++pathCostClock;
+        return distance;
+    }
+}
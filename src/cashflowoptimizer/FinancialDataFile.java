@@ -0,0 +1,334 @@
+package cashflowoptimizer;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+
+/**
+ * Reads and writes financial_data.json:
+ * <pre>
+ * {
+ *   "nodes": [{"id": ..., "type": ..., "balance": ...}, ...],
+ *   "edges": [{"source": ..., "destination": ..., "capacity": ..., "cost": ...}, ...],
+ *   "transactions": [{"source": ..., "destination": ..., "amount": ..., "cost": ...}, ...],
+ *   "costHistory": [...],
+ *   "totalCost": ...,
+ *   "rlImproved": ...
+ * }
+ * </pre>
+ * Both directions stream, so memory use does not depend on the file size:
+ * the reader hands each element to a Handler as it is parsed, and the writer
+ * goes through a 1 MB buffer straight into a file channel. Unknown members
+ * are skipped, and every section is optional.
+ */
+public class FinancialDataFile {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int EDGE_BATCH = 8192;
+
+    /**
+     * Receives the file's contents in file order. Methods default to doing
+     * nothing, so handlers only implement the sections they need.
+     */
+    public interface Handler {
+        default void node(String nodeId, NodeType type, double balance) throws IOException { }
+
+        default void edge(String sourceId, String destId, double capacity, double cost) throws IOException { }
+
+        default void transaction(String sourceId, String destId, double amount, double cost) throws IOException { }
+
+        default void costHistory(double cost) throws IOException { }
+
+        default void totalCost(double totalCost) throws IOException { }
+
+        default void rlImproved(boolean rlImproved) throws IOException { }
+    }
+
+    /**
+     * Parses the file and passes every element to the handler.
+     */
+    public static void read(Path path, Handler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             JsonReader reader = new JsonReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(),
+                                                                   BUFFER_SIZE))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!readMember(reader.nextName(), reader, handler)) {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            reader.peek();  // Rejects anything after the document
+        }
+    }
+
+    /**
+     * Parses the value of one top-level member, for documents that embed
+     * the file's sections among members of their own.
+     * @return false if name is not one of the file's sections; its value is then left unread
+     */
+    static boolean readMember(String name, JsonReader reader, Handler handler) throws IOException {
+        switch (name) {
+            case "nodes":
+                readNodes(reader, handler);
+                return true;
+            case "edges":
+                readEdges(reader, handler, false);
+                return true;
+            case "transactions":
+                readEdges(reader, handler, true);
+                return true;
+            case "costHistory":
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    handler.costHistory(readNumber(reader));
+                }
+                reader.endArray();
+                return true;
+            case "totalCost":
+                handler.totalCost(readNumber(reader));
+                return true;
+            case "rlImproved":
+                handler.rlImproved(reader.nextBoolean());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reads the nodes and edges of a file into graph, appending to what it
+     * already holds. Edges are inserted in batches; edges that name unknown
+     * nodes are skipped.
+     * @return Number of skipped edges
+     */
+    public static int readGraph(Path path, Graph graph) throws IOException {
+        return readGraph(path, graph, new Handler() { });
+    }
+
+    /**
+     * Like readGraph(path, graph), passing the transactions, cost history
+     * and totals to results.
+     */
+    public static int readGraph(Path path, Graph graph, Handler results) throws IOException {
+        GraphLoader loader = new GraphLoader(graph, results);
+        read(path, loader);
+        loader.flush();
+        return loader.getSkipped();
+    }
+
+    /**
+     * Writes the graph and an optimization result. The file is written to a
+     * temporary file first, synced and moved over the target, so readers
+     * never see a partial file.
+     */
+    public static void write(Path path, Graph graph, List<TransactionRecord> transactions,
+                             List<Double> costHistory, double totalCost, boolean rlImproved) throws IOException {
+        AtomicFile.write(path, channel -> {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE),
+                    BUFFER_SIZE), 2);
+            writer.beginObject();
+
+            writer.name("nodes").beginArray();
+            for (int node = 0; node < graph.getNodeCount(); node++) {
+                writer.beginObject()
+                      .name("id").value(graph.getNodeId(node))
+                      .name("type").value(graph.getNodeType(node).name())
+                      .name("balance").value(graph.getBalance(node))
+                      .endObject();
+            }
+            writer.endArray();
+
+            writer.name("edges").beginArray();
+            for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+                writer.beginObject()
+                      .name("source").value(graph.getNodeId(graph.getEdgeSource(edge)))
+                      .name("destination").value(graph.getNodeId(graph.getEdgeDest(edge)))
+                      .name("capacity").value(graph.getEdgeCapacity(edge))
+                      .name("cost").value(graph.getEdgeCost(edge))
+                      .endObject();
+            }
+            writer.endArray();
+
+            writer.name("transactions").beginArray();
+            for (TransactionRecord tr : transactions) {
+                writer.beginObject()
+                      .name("source").value(tr.getSourceNode())
+                      .name("destination").value(tr.getDestNode())
+                      .name("amount").value(tr.getAmount())
+                      .name("cost").value(tr.getCost())
+                      .endObject();
+            }
+            writer.endArray();
+
+            writer.name("costHistory").beginArray();
+            for (double cost : costHistory) {
+                writer.value(cost);
+            }
+            writer.endArray();
+
+            writer.name("totalCost").value(totalCost);
+            writer.name("rlImproved").value(rlImproved);
+            writer.endObject();
+            writer.flush();
+        });
+    }
+
+    private static void readNodes(JsonReader reader, Handler handler) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = null;
+            NodeType type = null;
+            double balance = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        id = reader.nextString();
+                        break;
+                    case "type":
+                        String typeName = reader.nextString();
+                        try {
+                            type = NodeType.valueOf(typeName);
+                        } catch (IllegalArgumentException e) {
+                            throw new IOException("Unknown node type " + typeName + " at line " + reader.getLine());
+                        }
+                        break;
+                    case "balance":
+                        balance = readNumber(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (id == null || type == null) {
+                throw new IOException("Node without id or type at line " + reader.getLine());
+            }
+            handler.node(id, type, balance);
+        }
+        reader.endArray();
+    }
+
+    // Edges and transactions share a layout apart from the name of the amount
+    private static void readEdges(JsonReader reader, Handler handler, boolean transactions) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String source = null;
+            String destination = null;
+            double amount = 0;
+            double cost = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "source":
+                        source = reader.nextString();
+                        break;
+                    case "destination":
+                        destination = reader.nextString();
+                        break;
+                    case "capacity":
+                    case "amount":
+                        amount = readNumber(reader);
+                        break;
+                    case "cost":
+                        cost = readNumber(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (source == null || destination == null) {
+                throw new IOException("Entry without source or destination at line " + reader.getLine());
+            }
+            if (transactions) {
+                handler.transaction(source, destination, amount, cost);
+            } else {
+                handler.edge(source, destination, amount, cost);
+            }
+        }
+        reader.endArray();
+    }
+
+    // Numbers written for NaN or infinity come back as null
+    private static double readNumber(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+            return Double.NaN;
+        }
+        return reader.nextDouble();
+    }
+
+    // Adds nodes as they arrive and edges in batches through Graph.addEdges
+    static class GraphLoader implements Handler {
+        private final Graph graph;
+        private final Handler results;
+        private final int[] sources = new int[EDGE_BATCH];
+        private final int[] dests = new int[EDGE_BATCH];
+        private final double[] capacities = new double[EDGE_BATCH];
+        private final double[] costs = new double[EDGE_BATCH];
+        private int pending;
+        private int skipped;
+
+        GraphLoader(Graph graph, Handler results) {
+            this.graph = graph;
+            this.results = results;
+        }
+
+        @Override
+        public void node(String nodeId, NodeType type, double balance) {
+            graph.addNode(nodeId, type, balance);
+            graph.setBalance(nodeId, balance);  // addNode keeps the old balance of a known node
+        }
+
+        @Override
+        public void edge(String sourceId, String destId, double capacity, double cost) {
+            int source = graph.getNodeIndex(sourceId);
+            int dest = graph.getNodeIndex(destId);
+            if (source == -1 || dest == -1) {
+                skipped++;
+                return;
+            }
+            sources[pending] = source;
+            dests[pending] = dest;
+            capacities[pending] = capacity;
+            costs[pending] = cost;
+            if (++pending == EDGE_BATCH) {
+                flush();
+            }
+        }
+
+        @Override
+        public void transaction(String sourceId, String destId, double amount, double cost) throws IOException {
+            results.transaction(sourceId, destId, amount, cost);
+        }
+
+        @Override
+        public void costHistory(double cost) throws IOException {
+            results.costHistory(cost);
+        }
+
+        @Override
+        public void totalCost(double totalCost) throws IOException {
+            results.totalCost(totalCost);
+        }
+
+        @Override
+        public void rlImproved(boolean rlImproved) throws IOException {
+            results.rlImproved(rlImproved);
+        }
+
+        void flush() {
+            graph.addEdges(sources, dests, capacities, costs, pending);
+            pending = 0;
+        }
+
+        int getSkipped() {
+            return skipped;
+        }
+    }
+}
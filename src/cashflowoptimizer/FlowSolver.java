@@ -0,0 +1,19 @@
+package cashflowoptimizer;
+
+import java.util.List;
+
+/**
+ * Common contract of the min-cost max-flow engines. A solve pushes as much
+ * flow as possible from the source to the sink, limited by the source's
+ * balance, at minimum total cost. It debits the source and credits the sink
+ * in the graph by the flow sent and records the transfers it made.
+ */
+public interface FlowSolver {
+    void computeMinCostMaxFlow(String sourceId, String sinkId);
+
+    double getTotalCost();
+
+    double getTotalFlow();
+
+    List<TransactionRecord> getTransactions();
+}
@@ -0,0 +1,10 @@
+package cashflowoptimizer;
+
+/**
+ * When TransactionJournal forces committed records to disk.
+ */
+public enum FsyncPolicy {
+    ALWAYS,    // Every commit is synced before it returns; concurrent commits share one sync
+    INTERVAL,  // Synced at most once per interval, so a crash can lose the last interval
+    NEVER      // Left to the operating system
+}
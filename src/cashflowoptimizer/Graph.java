@@ -4,134 +4,417 @@ import java.util.*;
 
 public class Graph {
     private Map<String, Integer> nodeIdToIndex;
-    private Map<Integer, String> indexToNodeId;
-    private Map<String, NodeType> nodeTypes;
-    private Map<String, Double> balances;
+    private List<String> indexToNodeId;
+    private NodeType[] nodeTypes;
+    private double[] balances;
     private int nodeCount;
-    private List<List<Edge>> adjacencyList;
-    
+
+    // Edges are kept as parallel primitive arrays until the graph is frozen
+    private int[] edgeSources;
+    private int[] edgeDests;
+    private double[] edgeCapacities;
+    private double[] edgeCosts;
+    private long[] edgeVersions;
+    private int edgeCount;
+    private long structureVersion;
+
+    // Order-independent sums of per-edge and per-node hashes, kept up to date by every change
+    private long edgeFingerprint;
+    private long nodeFingerprint;
+
+    // Cached CSR form, dropped whenever the topology changes
+    private CsrGraph frozen;
+
     public Graph() {
         nodeIdToIndex = new HashMap<>();
-        indexToNodeId = new HashMap<>();
-        nodeTypes = new HashMap<>();
-        balances = new HashMap<>();
+        indexToNodeId = new ArrayList<>();
+        nodeTypes = new NodeType[16];
+        balances = new double[16];
         nodeCount = 0;
-        adjacencyList = new ArrayList<>();
+        edgeSources = new int[16];
+        edgeDests = new int[16];
+        edgeCapacities = new double[16];
+        edgeCosts = new double[16];
+        edgeVersions = new long[16];
+        edgeCount = 0;
     }
-    
+
     public int addNode(String nodeId, NodeType type, double balance) {
-        if (!nodeIdToIndex.containsKey(nodeId)) {
-            int index = nodeCount++;
-            nodeIdToIndex.put(nodeId, index);
-            indexToNodeId.put(index, nodeId);
-            nodeTypes.put(nodeId, type);
-            balances.put(nodeId, balance);
-            adjacencyList.add(new ArrayList<>());
-            return index;
-        }
-        return nodeIdToIndex.get(nodeId);
-    }
-    
+        Integer existing = nodeIdToIndex.get(nodeId);
+        if (existing != null) {
+            return existing;
+        }
+
+        int index = nodeCount++;
+        if (index == nodeTypes.length) {
+            nodeTypes = Arrays.copyOf(nodeTypes, index * 2);
+            balances = Arrays.copyOf(balances, index * 2);
+        }
+        nodeIdToIndex.put(nodeId, index);
+        indexToNodeId.add(nodeId);
+        nodeTypes[index] = type;
+        balances[index] = balance;
+        nodeFingerprint += nodeHash(index);
+        frozen = null;
+        structureVersion++;
+        return index;
+    }
+
     public boolean addEdge(String sourceId, String destId, double capacity, double cost) {
-        if (!nodeIdToIndex.containsKey(sourceId) || !nodeIdToIndex.containsKey(destId)) {
+        Integer source = nodeIdToIndex.get(sourceId);
+        Integer dest = nodeIdToIndex.get(destId);
+        if (source == null || dest == null) {
+            return false;
+        }
+
+        if (edgeCount == edgeSources.length) {
+            int newLength = edgeCount * 2;
+            edgeSources = Arrays.copyOf(edgeSources, newLength);
+            edgeDests = Arrays.copyOf(edgeDests, newLength);
+            edgeCapacities = Arrays.copyOf(edgeCapacities, newLength);
+            edgeCosts = Arrays.copyOf(edgeCosts, newLength);
+            edgeVersions = Arrays.copyOf(edgeVersions, newLength);
+        }
+        edgeSources[edgeCount] = source;
+        edgeDests[edgeCount] = dest;
+        edgeCapacities[edgeCount] = capacity;
+        edgeCosts[edgeCount] = cost;
+        edgeVersions[edgeCount] = 0;
+        edgeFingerprint += edgeHash(edgeCount);
+        edgeCount++;
+        frozen = null;
+        structureVersion++;
+
+        return true;
+    }
+
+    /**
+     * Appends count edges given by node index in one step, growing the edge
+     * arrays at most once. Used by bulk loaders.
+     */
+    public void addEdges(int[] sources, int[] dests, double[] capacities, double[] costs, int count) {
+        for (int i = 0; i < count; i++) {
+            if (sources[i] < 0 || sources[i] >= nodeCount || dests[i] < 0 || dests[i] >= nodeCount) {
+                throw new IllegalArgumentException("Edge " + i + " refers to a missing node");
+            }
+        }
+        ensureCapacity(nodeCount, edgeCount + count);
+        System.arraycopy(sources, 0, edgeSources, edgeCount, count);
+        System.arraycopy(dests, 0, edgeDests, edgeCount, count);
+        System.arraycopy(capacities, 0, edgeCapacities, edgeCount, count);
+        System.arraycopy(costs, 0, edgeCosts, edgeCount, count);
+        Arrays.fill(edgeVersions, edgeCount, edgeCount + count, 0);
+        for (int i = 0; i < count; i++) {
+            edgeFingerprint += edgeHash(edgeCount + i);
+        }
+        edgeCount += count;
+        frozen = null;
+        structureVersion++;
+    }
+
+    /**
+     * Replaces the whole graph with another graph's nodes and edges, taking
+     * over its arrays. Lets a loader parse into a fresh graph and keep this
+     * one untouched if parsing fails.
+     */
+    void assign(Graph other) {
+        assign(other.indexToNodeId.toArray(new String[0]), other.nodeTypes, other.balances, other.nodeCount,
+               other.edgeSources, other.edgeDests, other.edgeCapacities, other.edgeCosts, other.edgeCount);
+    }
+
+    /**
+     * Replaces the whole graph with the given arrays, which the graph takes
+     * over without copying. Used by bulk loaders such as GraphSnapshot.
+     */
+    void assign(String[] nodeIds, NodeType[] types, double[] nodeBalances, int nodes,
+                int[] sources, int[] dests, double[] capacities, double[] costs, int edges) {
+        nodeIdToIndex = new HashMap<>((int) (nodes / 0.75f) + 1);
+        indexToNodeId = new ArrayList<>(Arrays.asList(nodeIds).subList(0, nodes));
+        for (int i = 0; i < nodes; i++) {
+            nodeIdToIndex.put(nodeIds[i], i);
+        }
+        nodeTypes = types;
+        balances = nodeBalances;
+        nodeCount = nodes;
+        edgeSources = sources;
+        edgeDests = dests;
+        edgeCapacities = capacities;
+        edgeCosts = costs;
+        edgeVersions = new long[Math.max(16, edges)];
+        edgeCount = edges;
+        nodeFingerprint = 0;
+        for (int i = 0; i < nodes; i++) {
+            nodeFingerprint += nodeHash(i);
+        }
+        edgeFingerprint = 0;
+        for (int e = 0; e < edges; e++) {
+            edgeFingerprint += edgeHash(e);
+        }
+        frozen = null;
+        structureVersion++;
+    }
+
+    /**
+     * Removes every node and edge, keeping the arrays for reuse.
+     */
+    public void clear() {
+        nodeIdToIndex.clear();
+        indexToNodeId.clear();
+        nodeCount = 0;
+        edgeCount = 0;
+        nodeFingerprint = 0;
+        edgeFingerprint = 0;
+        frozen = null;
+        structureVersion++;
+    }
+
+    /**
+     * Changes the capacity and cost of the first edge from sourceId to destId.
+     * @return false if there is no such edge
+     */
+    public boolean updateEdge(String sourceId, String destId, double capacity, double cost) {
+        int edge = findEdge(sourceId, destId);
+        if (edge == -1) {
             return false;
         }
-        
-        int source = nodeIdToIndex.get(sourceId);
-        int dest = nodeIdToIndex.get(destId);
-        
-        // Create forward edge
-        Edge forwardEdge = new Edge(source, dest, capacity, cost);
-        // Create reverse edge with initial capacity 0
-        Edge reverseEdge = new Edge(dest, source, 0, -cost);
-        
-        // Set reverse edge pointers
-        forwardEdge.setReverseEdge(reverseEdge);
-        reverseEdge.setReverseEdge(forwardEdge);
-        
-        // Add edges to the adjacency list
-        adjacencyList.get(source).add(forwardEdge);
-        adjacencyList.get(dest).add(reverseEdge);
-        
+        updateEdge(edge, capacity, cost);
         return true;
     }
-    
+
+    /**
+     * @return Index of the first edge from sourceId to destId, or -1 if there is none
+     */
+    public int findEdge(String sourceId, String destId) {
+        Integer source = nodeIdToIndex.get(sourceId);
+        Integer dest = nodeIdToIndex.get(destId);
+        if (source == null || dest == null) {
+            return -1;
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeSources[e] == source && edgeDests[e] == dest) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Changes the capacity and cost of an edge, identified by the order in
+     * which it was added. Bumps the edge's version, and the structure version
+     * too if the edge became usable or cheaper.
+     */
+    public void updateEdge(int edge, double capacity, double cost) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        boolean improved = (edgeCapacities[edge] <= 0 && capacity > 0) || cost < edgeCosts[edge];
+        edgeFingerprint -= edgeHash(edge);
+        edgeCapacities[edge] = capacity;
+        edgeCosts[edge] = cost;
+        edgeFingerprint += edgeHash(edge);
+        edgeVersions[edge]++;
+        if (improved) {
+            structureVersion++;
+        }
+        frozen = null;
+    }
+
+    /**
+     * Grows the node and edge arrays to hold at least the given counts, so
+     * bulk loads do not copy them repeatedly while growing.
+     */
+    public void ensureCapacity(int nodes, int edges) {
+        if (nodes > nodeTypes.length) {
+            nodeTypes = Arrays.copyOf(nodeTypes, nodes);
+            balances = Arrays.copyOf(balances, nodes);
+            if (nodeCount == 0) {
+                nodeIdToIndex = new HashMap<>((int) (nodes / 0.75f) + 1);
+                indexToNodeId = new ArrayList<>(nodes);
+            }
+        }
+        if (edges > edgeSources.length) {
+            edges = Math.max(edges, (int) Math.min(Integer.MAX_VALUE - 8, edgeSources.length * 2L));
+            edgeSources = Arrays.copyOf(edgeSources, edges);
+            edgeDests = Arrays.copyOf(edgeDests, edges);
+            edgeCapacities = Arrays.copyOf(edgeCapacities, edges);
+            edgeCosts = Arrays.copyOf(edgeCosts, edges);
+            edgeVersions = Arrays.copyOf(edgeVersions, edges);
+        }
+    }
+
     public NodeType getNodeType(String nodeId) {
-        return nodeTypes.get(nodeId);
+        Integer index = nodeIdToIndex.get(nodeId);
+        return index == null ? null : nodeTypes[index];
     }
-    
+
     public double getBalance(String nodeId) {
-        return balances.getOrDefault(nodeId, 0.0);
+        Integer index = nodeIdToIndex.get(nodeId);
+        return index == null ? 0.0 : balances[index];
     }
-    
+
     public void setBalance(String nodeId, double balance) {
-        balances.put(nodeId, balance);
+        Integer index = nodeIdToIndex.get(nodeId);
+        if (index != null) {
+            nodeFingerprint -= nodeHash(index);
+            balances[index] = balance;
+            nodeFingerprint += nodeHash(index);
+        }
     }
-    
+
     public Set<String> getNodeIds() {
         return nodeIdToIndex.keySet();
     }
-    
+
     public int getNodeCount() {
         return nodeCount;
     }
-    
-    public List<Edge> getAdjacentEdges(int nodeIndex) {
-        return adjacencyList.get(nodeIndex);
+
+    public int getEdgeCount() {
+        return edgeCount;
     }
-    
+
     public int getNodeIndex(String nodeId) {
         return nodeIdToIndex.getOrDefault(nodeId, -1);
     }
-    
+
     public String getNodeId(int index) {
         return indexToNodeId.get(index);
     }
-    
-    public List<List<Edge>> getAdjacencyList() {
-        return adjacencyList;
+
+    public NodeType getNodeType(int index) {
+        return nodeTypes[index];
+    }
+
+    public double getBalance(int index) {
+        return balances[index];
+    }
+
+    public int getEdgeSource(int edge) {
+        return edgeSources[edge];
+    }
+
+    public int getEdgeDest(int edge) {
+        return edgeDests[edge];
+    }
+
+    public double getEdgeCapacity(int edge) {
+        return edgeCapacities[edge];
+    }
+
+    public double getEdgeCost(int edge) {
+        return edgeCosts[edge];
+    }
+
+    /**
+     * @return How many times updateEdge has changed the edge
+     */
+    public long getEdgeVersion(int edge) {
+        return edgeVersions[edge];
     }
-    
+
+    /**
+     * Counter bumped by changes that can create new or cheaper paths: added
+     * nodes and edges, and edges made usable or cheaper by updateEdge.
+     * Changes that only make edges worse leave it alone.
+     */
+    public long getStructureVersion() {
+        return structureVersion;
+    }
+
+    /**
+     * 64-bit hash of every node's ID, type and balance and every edge's ends,
+     * capacity and cost. It is updated in O(1) by each change, so two graphs
+     * with equal fingerprints can be treated as the same flow problem.
+     */
+    public long getFingerprint() {
+        return edgeFingerprint + nodeFingerprint;
+    }
+
+    /**
+     * @return The part of the fingerprint covering the edges
+     */
+    public long getEdgeFingerprint() {
+        return edgeFingerprint;
+    }
+
+    /**
+     * @return The part of the fingerprint covering node IDs, types and balances
+     */
+    public long getNodeFingerprint() {
+        return nodeFingerprint;
+    }
+
+    /**
+     * Returns the compressed-sparse-row form of this graph. The result is
+     * cached and rebuilt only after addNode, addEdge or updateEdge.
+     * @return The frozen CSR graph
+     */
+    public CsrGraph freeze() {
+        if (frozen == null) {
+            frozen = new CsrGraph(nodeCount, edgeCount, edgeSources, edgeDests, edgeCapacities, edgeCosts);
+        }
+        return frozen;
+    }
+
     // Deep copy method for RL simulations
     public Graph copy() {
         Graph newGraph = new Graph();
-        
-        // Copy nodes and their properties
-        for (String nodeId : nodeIdToIndex.keySet()) {
-            newGraph.addNode(nodeId, nodeTypes.get(nodeId), balances.get(nodeId));
-        }
-        
-        // Copy edges
-        for (int i = 0; i < adjacencyList.size(); i++) {
-            for (Edge edge : adjacencyList.get(i)) {
-                if (edge.getCapacity() > 0 && edge.getReverseEdge().getCapacity() == 0) {
-                    // Only add forward edges to avoid duplicates
-                    String sourceId = indexToNodeId.get(edge.getSource());
-                    String destId = indexToNodeId.get(edge.getDest());
-                    newGraph.addEdge(sourceId, destId, edge.getCapacity(), edge.getCost());
-                }
-            }
-        }
-        
+        newGraph.nodeIdToIndex = new HashMap<>(nodeIdToIndex);
+        newGraph.indexToNodeId = new ArrayList<>(indexToNodeId);
+        newGraph.nodeTypes = Arrays.copyOf(nodeTypes, nodeTypes.length);
+        newGraph.balances = Arrays.copyOf(balances, balances.length);
+        newGraph.nodeCount = nodeCount;
+        newGraph.edgeSources = Arrays.copyOf(edgeSources, edgeSources.length);
+        newGraph.edgeDests = Arrays.copyOf(edgeDests, edgeDests.length);
+        newGraph.edgeCapacities = Arrays.copyOf(edgeCapacities, edgeCapacities.length);
+        newGraph.edgeCosts = Arrays.copyOf(edgeCosts, edgeCosts.length);
+        newGraph.edgeVersions = Arrays.copyOf(edgeVersions, edgeVersions.length);
+        newGraph.edgeCount = edgeCount;
+        newGraph.structureVersion = structureVersion;
+        newGraph.edgeFingerprint = edgeFingerprint;
+        newGraph.nodeFingerprint = nodeFingerprint;
+        // The frozen topology is immutable, so the copy can share it
+        newGraph.frozen = frozen;
         return newGraph;
     }
 
     public void updateBalance(String nodeId, double amount) {
-        // Check if the nodeId exists in the balances map
-        if (balances.containsKey(nodeId)) {
+        // Check if the nodeId exists in the graph
+        Integer index = nodeIdToIndex.get(nodeId);
+        if (index != null) {
             // Update the balance by adding the amount to the current balance
-            double currentBalance = balances.get(nodeId);
-            double newBalance = currentBalance + amount;
-            
-            // Update the balance in the map
-            balances.put(nodeId, newBalance);
-            
-            // Optionally, log the balance update for debugging purposes
-            System.out.println("Updated Balance for Node " + nodeId + ": " + newBalance);
+            double newBalance = balances[index] + amount;
+            nodeFingerprint -= nodeHash(index);
+            balances[index] = newBalance;
+            nodeFingerprint += nodeHash(index);
+
+            // Guarded so the disabled default costs a field read rather than a lambda
+            if (Log.isEnabled(LogLevel.DEBUG)) {
+                Log.debug(() -> "Updated Balance for Node " + nodeId + ": " + newBalance);
+            }
         } else {
-            // If nodeId is not found in the balances map, print an error message
-            System.out.println("Error: Node " + nodeId + " not found.");
+            Log.warn(() -> "Error: Node " + nodeId + " not found.");
         }
     }
-    
+
+    private long nodeHash(int index) {
+        NodeType type = nodeTypes[index];
+        long h = mix(((long) index << 32) ^ (indexToNodeId.get(index).hashCode() & 0xffffffffL));
+        h = mix(h + (type == null ? -1 : type.ordinal()));
+        return mix(h ^ Double.doubleToLongBits(balances[index]));
+    }
+
+    private long edgeHash(int edge) {
+        long h = mix(~(long) edge);
+        h = mix(h ^ ((long) edgeSources[edge] << 32) ^ (edgeDests[edge] & 0xffffffffL));
+        h = mix(h ^ Double.doubleToLongBits(edgeCapacities[edge]));
+        return mix(h ^ Double.doubleToLongBits(edgeCosts[edge]));
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
 }
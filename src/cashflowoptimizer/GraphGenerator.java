@@ -0,0 +1,287 @@
+package cashflowoptimizer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generator of synthetic treasury networks. The same seed and sizes
+ * always give the same graph.
+ *
+ * A few hub banks, the ACCOUNT nodes "H0".."Hn", form a ring with extra
+ * random interbank links. Revenue leaves "R*" pay into a hub, hubs pay out to
+ * expense leaves "E*", and operating accounts "A*" hang off a hub in both
+ * directions. Leaves pick hubs with a skew towards the first few, so some
+ * banks are much bigger than others. Edges beyond that backbone are extra
+ * leaf-hub links, interbank links and a few direct revenue-to-expense
+ * transfers.
+ *
+ * Capacities and costs are Pareto distributed: most edges are small and
+ * cheap, a few are very large or very expensive. Nodes and edges are
+ * produced one at a time and handed to a GraphSink, so nothing but the sink
+ * holds the graph.
+ */
+public class GraphGenerator {
+    private long seed;
+    private int nodeCount;
+    private long edgeCount;
+    private int hubCount;
+    private double revenueFraction;
+    private double expenseFraction;
+    private double capacityAlpha;
+    private double costAlpha;
+
+    public GraphGenerator(long seed) {
+        this.seed = seed;
+        this.edgeCount = 10000;
+        this.revenueFraction = 0.3;
+        this.expenseFraction = 0.4;
+        this.capacityAlpha = 1.2;
+        this.costAlpha = 2.0;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the number of edges to generate. Every leaf is always attached to
+     * a hub, so very small counts with many nodes can be exceeded.
+     * @param edgeCount Number of edges, 10^3 to 10^7 are typical
+     */
+    public void setEdgeCount(long edgeCount) {
+        if (edgeCount <= 0 || edgeCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Edge count must be between 1 and " + Integer.MAX_VALUE);
+        }
+        this.edgeCount = edgeCount;
+    }
+
+    /**
+     * @param nodeCount Number of nodes, or 0 to use a quarter of the edge count
+     */
+    public void setNodeCount(int nodeCount) {
+        if (nodeCount < 0) {
+            throw new IllegalArgumentException("Node count must not be negative");
+        }
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * @param hubCount Number of hub banks, or 0 for one per 500 nodes
+     */
+    public void setHubCount(int hubCount) {
+        if (hubCount < 0) {
+            throw new IllegalArgumentException("Hub count must not be negative");
+        }
+        this.hubCount = hubCount;
+    }
+
+    /**
+     * Sets which share of the non-hub nodes are revenues and expenses; the
+     * rest are operating accounts.
+     */
+    public void setLeafMix(double revenueFraction, double expenseFraction) {
+        if (revenueFraction <= 0 || expenseFraction <= 0 || revenueFraction + expenseFraction > 1) {
+            throw new IllegalArgumentException("Fractions must be positive and add up to at most 1");
+        }
+        this.revenueFraction = revenueFraction;
+        this.expenseFraction = expenseFraction;
+    }
+
+    /**
+     * Sets the Pareto tail indices; smaller values give heavier tails.
+     */
+    public void setTailIndices(double capacityAlpha, double costAlpha) {
+        if (capacityAlpha <= 0 || costAlpha <= 0) {
+            throw new IllegalArgumentException("Tail indices must be positive");
+        }
+        this.capacityAlpha = capacityAlpha;
+        this.costAlpha = costAlpha;
+    }
+
+    public int getNodeCount() {
+        return nodeCount > 0 ? nodeCount : (int) Math.max(8, edgeCount / 4);
+    }
+
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Streams the graph into a new Graph, sized up front so its arrays are
+     * never copied while growing.
+     */
+    public Graph generate() {
+        Graph graph = new Graph();
+        generate(graph);
+        return graph;
+    }
+
+    /**
+     * Streams the graph into an existing, normally empty, Graph.
+     */
+    public void generate(Graph graph) {
+        try {
+            generate(new GraphSink() {
+                public void begin(int nodes, long edges) { graph.ensureCapacity(nodes, (int) edges); }
+                public void node(String nodeId, NodeType type, double balance) { graph.addNode(nodeId, type, balance); }
+                public void edge(String sourceId, String destId, double capacity, double cost) {
+                    graph.addEdge(sourceId, destId, capacity, cost);
+                }
+                public void end() { }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // The in-memory sink never throws
+        }
+    }
+
+    /**
+     * Streams the graph to a JSON file with "nodes" and "edges" arrays, in
+     * the layout of financial_data.json.
+     */
+    public void writeJson(Path path) throws IOException {
+        try (JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(path), StandardCharsets.UTF_8), 1 << 20), 2)) {
+            generate(new GraphSink() {
+                private boolean inEdges;
+
+                public void begin(int nodes, long edges) throws IOException {
+                    out.beginObject().name("nodes").beginArray();
+                }
+
+                public void node(String nodeId, NodeType type, double balance) throws IOException {
+                    out.beginObject().name("id").value(nodeId).name("type").value(type.name())
+                       .name("balance").value(balance).endObject();
+                }
+
+                public void edge(String sourceId, String destId, double capacity, double cost) throws IOException {
+                    if (!inEdges) {
+                        out.endArray().name("edges").beginArray();
+                        inEdges = true;
+                    }
+                    out.beginObject().name("source").value(sourceId).name("destination").value(destId)
+                       .name("capacity").value(capacity).name("cost").value(cost).endObject();
+                }
+
+                public void end() throws IOException {
+                    if (!inEdges) {
+                        out.endArray().name("edges").beginArray();
+                    }
+                    out.endArray().endObject();
+                }
+            });
+        }
+    }
+
+    /**
+     * Produces every node, then every edge, into the sink.
+     */
+    public void generate(GraphSink sink) throws IOException {
+        int nodes = getNodeCount();
+        int hubs = hubCount > 0 ? Math.min(hubCount, nodes - 2) : Math.max(2, nodes / 500);
+        int leaves = nodes - hubs;
+        int revenues = Math.max(1, (int) (leaves * revenueFraction));
+        int expenses = Math.max(1, Math.min(leaves - revenues, (int) (leaves * expenseFraction)));
+        int accounts = leaves - revenues - expenses;
+        if (leaves < 2) {
+            throw new IllegalArgumentException("Need at least " + (hubs + 2) + " nodes for " + hubs + " hubs");
+        }
+
+        long backbone = (hubs > 1 ? 2L * hubs : 0) + revenues + expenses + 2L * accounts;
+        long extra = Math.max(0, edgeCount - backbone);
+        SplittableRandom random = new SplittableRandom(seed);
+
+        sink.begin(nodes, backbone + extra);
+
+        for (int h = 0; h < hubs; h++) {
+            sink.node("H" + h, NodeType.ACCOUNT, 1e6 * pareto(random, capacityAlpha));
+        }
+        for (int r = 0; r < revenues; r++) {
+            sink.node("R" + r, NodeType.REVENUE, Math.round(1000 * pareto(random, capacityAlpha)));
+        }
+        for (int x = 0; x < expenses; x++) {
+            sink.node("E" + x, NodeType.EXPENSE, 0);
+        }
+        for (int a = 0; a < accounts; a++) {
+            sink.node("A" + a, NodeType.ACCOUNT, Math.round(100 * pareto(random, capacityAlpha)));
+        }
+
+        // Backbone: interbank ring both ways, then each leaf attached to one hub
+        if (hubs > 1) {
+            for (int h = 0; h < hubs; h++) {
+                String next = "H" + ((h + 1) % hubs);
+                sink.edge("H" + h, next, interbankCapacity(random), interbankCost(random));
+                sink.edge(next, "H" + h, interbankCapacity(random), interbankCost(random));
+            }
+        }
+        for (int r = 0; r < revenues; r++) {
+            sink.edge("R" + r, "H" + pickHub(random, hubs), capacity(random), cost(random));
+        }
+        for (int x = 0; x < expenses; x++) {
+            sink.edge("H" + pickHub(random, hubs), "E" + x, capacity(random), cost(random));
+        }
+        for (int a = 0; a < accounts; a++) {
+            int hub = pickHub(random, hubs);
+            sink.edge("H" + hub, "A" + a, capacity(random), cost(random));
+            sink.edge("A" + a, "H" + hub, capacity(random), cost(random));
+        }
+
+        // Extra edges up to the requested count
+        for (long e = 0; e < extra; e++) {
+            double kind = random.nextDouble();
+            if (kind < 0.35) {
+                sink.edge("R" + random.nextInt(revenues), "H" + pickHub(random, hubs), capacity(random), cost(random));
+            } else if (kind < 0.7) {
+                sink.edge("H" + pickHub(random, hubs), "E" + random.nextInt(expenses), capacity(random), cost(random));
+            } else if (kind < 0.8 && accounts > 0) {
+                int a = random.nextInt(accounts);
+                int hub = pickHub(random, hubs);
+                if (random.nextBoolean()) {
+                    sink.edge("A" + a, "H" + hub, capacity(random), cost(random));
+                } else {
+                    sink.edge("H" + hub, "A" + a, capacity(random), cost(random));
+                }
+            } else if (kind < 0.95 && hubs > 1) {
+                int from = pickHub(random, hubs);
+                int to = random.nextInt(hubs - 1);
+                if (to >= from) {
+                    to++;
+                }
+                sink.edge("H" + from, "H" + to, interbankCapacity(random), interbankCost(random));
+            } else {
+                // Direct transfers skip the banks but cost more
+                sink.edge("R" + random.nextInt(revenues), "E" + random.nextInt(expenses),
+                          capacity(random), 2 * cost(random));
+            }
+        }
+        sink.end();
+    }
+
+    // Hub index with density proportional to 1 / sqrt(index), favouring the first hubs
+    private static int pickHub(SplittableRandom random, int hubs) {
+        double u = random.nextDouble();
+        return Math.min(hubs - 1, (int) (hubs * u * u));
+    }
+
+    private double capacity(SplittableRandom random) {
+        return Math.min(1e9, Math.round(100 * pareto(random, capacityAlpha)));
+    }
+
+    private double interbankCapacity(SplittableRandom random) {
+        return Math.min(1e12, Math.round(1e5 * pareto(random, capacityAlpha)));
+    }
+
+    private double cost(SplittableRandom random) {
+        return Math.min(1e6, Math.floor(pareto(random, costAlpha)));
+    }
+
+    private double interbankCost(SplittableRandom random) {
+        return Math.min(1e6, Math.floor(pareto(random, 2 * costAlpha)));
+    }
+
+    // Pareto with minimum 1 and tail index alpha, by inverse transform
+    private static double pareto(SplittableRandom random, double alpha) {
+        return Math.pow(1 - random.nextDouble(), -1 / alpha);
+    }
+}
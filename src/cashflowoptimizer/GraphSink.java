@@ -0,0 +1,22 @@
+package cashflowoptimizer;
+
+import java.io.IOException;
+
+/**
+ * Receives a graph one node or edge at a time, so producers such as
+ * GraphGenerator can hand over large graphs without building them twice.
+ * Every node is delivered before the first edge.
+ */
+public interface GraphSink {
+    /**
+     * Called once before anything else with the final sizes, so sinks can
+     * allocate up front.
+     */
+    void begin(int nodeCount, long edgeCount) throws IOException;
+
+    void node(String nodeId, NodeType type, double balance) throws IOException;
+
+    void edge(String sourceId, String destId, double capacity, double cost) throws IOException;
+
+    void end() throws IOException;
+}
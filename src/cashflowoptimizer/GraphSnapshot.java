@@ -0,0 +1,310 @@
+package cashflowoptimizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a whole Graph, optionally with the per-edge flows of a
+ * ResidualWorkspace, for fast restarts.
+ *
+ * File layout (little-endian, version 1):
+ * <pre>
+ *   header     magic "GSN1", version, node count, flags, edge count,
+ *              dictionary length, payload length, CRC32 of the payload
+ *   dictionary per node: int length, UTF-8 id bytes
+ *   types      byte ordinal[nodeCount]
+ *   balances   double[nodeCount]
+ *   edges      int source[edgeCount], int dest[edgeCount],
+ *              double capacity[edgeCount], double cost[edgeCount],
+ *              then double flow[edgeCount] if the flows flag is set
+ * </pre>
+ * Sections start on 8-byte boundaries. Loading maps each section and copies
+ * it into the graph's primitive arrays with one bulk get, so the only
+ * objects created per node are its id string and map entry, and none are
+ * created per edge.
+ */
+public class GraphSnapshot {
+    private static final int MAGIC = 0x47534E31;  // "GSN1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int FLAG_FLOWS = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+
+    /**
+     * Writes the graph without flows.
+     */
+    public static void write(Path path, Graph graph) throws IOException {
+        write(path, graph, null);
+    }
+
+    /**
+     * Writes the workspace's graph together with its current flows.
+     */
+    public static void write(Path path, ResidualWorkspace workspace) throws IOException {
+        write(path, workspace.getGraph(), workspace);
+    }
+
+    /**
+     * Replaces the contents of graph with a snapshot. The checksum is
+     * verified before the graph is touched.
+     * @return Flow of each edge, or null if the snapshot has no flows
+     */
+    public static double[] read(Path path, Graph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a graph snapshot");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported graph snapshot version " + header.getInt(4));
+            }
+            int nodeCount = header.getInt(8);
+            boolean hasFlows = (header.getInt(12) & FLAG_FLOWS) != 0;
+            long edgeCount = header.getLong(16);
+            long dictionaryLength = header.getLong(24);
+            long payloadLength = header.getLong(32);
+            long checksum = header.getLong(40);
+            if (nodeCount < 0 || edgeCount < 0 || edgeCount > Integer.MAX_VALUE
+                    || HEADER_SIZE + payloadLength != channel.size()) {
+                throw new IOException("Graph snapshot is truncated or corrupt");
+            }
+
+            CRC32 crc = new CRC32();
+            for (long offset = HEADER_SIZE; offset < channel.size(); offset += Integer.MAX_VALUE) {
+                crc.update(map(channel, offset, Math.min(Integer.MAX_VALUE, channel.size() - offset)));
+            }
+            if (crc.getValue() != checksum) {
+                throw new IOException("Graph snapshot checksum mismatch");
+            }
+
+            int edges = (int) edgeCount;
+            long position = HEADER_SIZE;
+            String[] nodeIds = new String[nodeCount];
+            ByteBuffer dictionary = map(channel, position, dictionaryLength);
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < nodeCount; i++) {
+                int length = dictionary.getInt();
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                dictionary.get(bytes, 0, length);
+                nodeIds[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            position = align(position + dictionaryLength);
+
+            byte[] typeOrdinals = new byte[nodeCount];
+            map(channel, position, nodeCount).get(typeOrdinals);
+            NodeType[] types = new NodeType[Math.max(16, nodeCount)];
+            for (int i = 0; i < nodeCount; i++) {
+                if (typeOrdinals[i] < 0 || typeOrdinals[i] >= NODE_TYPES.length) {
+                    throw new IOException("Unknown node type in graph snapshot");
+                }
+                types[i] = NODE_TYPES[typeOrdinals[i]];
+            }
+            position = align(position + nodeCount);
+
+            double[] balances = new double[Math.max(16, nodeCount)];
+            map(channel, position, 8L * nodeCount).asDoubleBuffer().get(balances, 0, nodeCount);
+            position += 8L * nodeCount;
+
+            int capacity = Math.max(16, edges);
+            int[] sources = new int[capacity];
+            int[] dests = new int[capacity];
+            double[] capacities = new double[capacity];
+            double[] costs = new double[capacity];
+            map(channel, position, 4L * edges).asIntBuffer().get(sources, 0, edges);
+            position += 4L * edges;
+            map(channel, position, 4L * edges).asIntBuffer().get(dests, 0, edges);
+            position = align(position + 4L * edges);
+            map(channel, position, 8L * edges).asDoubleBuffer().get(capacities, 0, edges);
+            position += 8L * edges;
+            map(channel, position, 8L * edges).asDoubleBuffer().get(costs, 0, edges);
+            position += 8L * edges;
+            double[] flows = null;
+            if (hasFlows) {
+                flows = new double[edges];
+                map(channel, position, 8L * edges).asDoubleBuffer().get(flows);
+            }
+
+            for (int e = 0; e < edges; e++) {
+                if (sources[e] < 0 || sources[e] >= nodeCount || dests[e] < 0 || dests[e] >= nodeCount) {
+                    throw new IOException("Graph snapshot edge " + e + " refers to a missing node");
+                }
+            }
+            graph.assign(nodeIds, types, balances, nodeCount, sources, dests, capacities, costs, edges);
+            return flows;
+        }
+    }
+
+    /**
+     * Reads a snapshot into a new Graph, dropping any flows.
+     */
+    public static Graph read(Path path) throws IOException {
+        Graph graph = new Graph();
+        read(path, graph);
+        return graph;
+    }
+
+    /**
+     * Puts flows returned by read back onto a workspace over the same graph.
+     */
+    public static void restoreFlows(ResidualWorkspace workspace, double[] flows) {
+        CsrGraph network = workspace.getNetwork();
+        if (flows.length != network.getEdgeCount()) {
+            throw new IllegalArgumentException("Flows do not match the workspace's graph");
+        }
+        for (int edge = 0; edge < flows.length; edge++) {
+            if (flows[edge] != 0) {
+                workspace.addFlow(network.getForwardArc(edge), flows[edge]);
+            }
+        }
+    }
+
+    private static void write(Path path, Graph graph, ResidualWorkspace workspace) throws IOException {
+        int nodeCount = graph.getNodeCount();
+        int edgeCount = graph.getEdgeCount();
+        CsrGraph network = workspace == null ? null : workspace.getNetwork();
+        if (network != null && network.getEdgeCount() != edgeCount) {
+            throw new IllegalArgumentException("Workspace is older than the graph's topology");
+        }
+
+        AtomicFile.write(path, channel -> {
+            SectionWriter out = new SectionWriter(channel);
+
+            long dictionaryStart = out.position();
+            for (int i = 0; i < nodeCount; i++) {
+                byte[] id = graph.getNodeId(i).getBytes(StandardCharsets.UTF_8);
+                out.putInt(id.length);
+                out.put(id);
+            }
+            long dictionaryLength = out.position() - dictionaryStart;
+            out.align();
+
+            for (int i = 0; i < nodeCount; i++) {
+                out.put((byte) graph.getNodeType(i).ordinal());
+            }
+            out.align();
+            for (int i = 0; i < nodeCount; i++) {
+                out.putDouble(graph.getBalance(i));
+            }
+
+            for (int e = 0; e < edgeCount; e++) {
+                out.putInt(graph.getEdgeSource(e));
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                out.putInt(graph.getEdgeDest(e));
+            }
+            out.align();
+            for (int e = 0; e < edgeCount; e++) {
+                out.putDouble(graph.getEdgeCapacity(e));
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                out.putDouble(graph.getEdgeCost(e));
+            }
+            if (network != null) {
+                for (int e = 0; e < edgeCount; e++) {
+                    out.putDouble(workspace.getFlow(network.getForwardArc(e)));
+                }
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(nodeCount).putInt(network != null ? FLAG_FLOWS : 0)
+                  .putLong(edgeCount).putLong(dictionaryLength)
+                  .putLong(out.position() - HEADER_SIZE).putLong(out.getChecksum());
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        });
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE || position + size > channel.size()) {
+            throw new IOException("Graph snapshot section out of range");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    // Buffered payload writer that keeps the CRC32 of everything after the header
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32 crc;
+        private long flushed;
+
+        SectionWriter(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            this.crc = new CRC32();
+            this.flushed = HEADER_SIZE;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void put(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(bytes.length - offset, buffer.remaining());
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void align() throws IOException {
+            while ((position() & 7) != 0) {
+                put((byte) 0);
+            }
+        }
+
+        long getChecksum() {
+            return crc.getValue();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            ByteBuffer checksummed = buffer.duplicate();
+            crc.update(checksummed);
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer, flushed);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package cashflowoptimizer;
+
+import java.util.*;
+
+/**
+ * Assigns dense int ids, starting at 0, to distinct values. Released ids
+ * are handed out again before new ones, so the ids stay dense.
+ */
+public class IdInterner<T> {
+    private Map<T, Integer> ids;
+    private List<T> values;
+    private int[] freeIds = new int[16];
+    private int freeCount;
+
+    public IdInterner() {
+        ids = new HashMap<>();
+        values = new ArrayList<>();
+    }
+
+    /**
+     * Returns the id of the value, assigning the next free id if it is new.
+     */
+    public int intern(T value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            if (freeCount > 0) {
+                id = freeIds[--freeCount];
+                values.set(id, value);
+            } else {
+                id = values.size();
+                values.add(value);
+            }
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the value, or -1 if it has not been interned.
+     */
+    public int find(T value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the value with this id, or null if the id was released.
+     */
+    public T get(int id) {
+        return values.get(id);
+    }
+
+    /**
+     * Forgets the value with this id so that the id can be reused.
+     */
+    public void release(int id) {
+        T value = values.get(id);
+        if (value == null) {
+            return;
+        }
+        ids.remove(value);
+        values.set(id, null);
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * @return One more than the highest id handed out so far
+     */
+    public int size() {
+        return values.size();
+    }
+}
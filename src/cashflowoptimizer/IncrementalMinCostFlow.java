@@ -0,0 +1,415 @@
+package cashflowoptimizer;
+
+import java.util.*;
+
+/**
+ * Min-cost flow between a fixed source and sink that can be re-optimised
+ * after small edits instead of solved again from zero flow.
+ *
+ * The current flow and dual potentials are kept between calls. An edit that
+ * breaks optimality is repaired locally: a flow above a lowered capacity is
+ * clipped, and a residual arc whose reduced cost turned negative is saturated.
+ * Both leave imbalances at the arc's endpoints but restore non-negative reduced
+ * costs everywhere. reoptimize() then routes the imbalances along shortest
+ * paths with the existing potentials, so only the area around the edits is
+ * searched.
+ *
+ * Capacities and costs are copied from the graph when the solver is created;
+ * edits go through this class and do not change the Graph.
+ */
+public class IncrementalMinCostFlow {
+    private static final double EPSILON = 1e-9;
+    private static final double MIN_FLOW = 1e-6;
+
+    // Search modes of the repair phases
+    private static final int DRAIN_EXCESS = 0;
+    private static final int FILL_DEFICIT = 1;
+    private static final int AUGMENT = 2;
+
+    private Graph graph;
+    private CsrGraph network;
+    private int source;
+    private int sink;
+    private double supply;
+    private boolean initialized;
+
+    // Per-arc state, indexed like the CSR arcs
+    private double[] capacity;
+    private double[] cost;
+    private double[] flow;
+
+    // Per-node state
+    private double[] potentials;
+    private double[] imbalance;
+    private int[] pending;
+    private boolean[] isPending;
+    private int pendingCount;
+
+    // Flow of every edge changed since the last reoptimize, for the delta
+    private double[] previousFlow;
+    private boolean[] edgeTouched;
+    private int[] touchedEdges;
+    private int touchedEdgeCount;
+
+    // Dijkstra scratch space
+    private ShortestPathQueue queue;
+    private double[] distance;
+    private int[] predArc;
+    private boolean[] settled;
+    private int[] settledNodes;
+    private int settledCount;
+
+    public IncrementalMinCostFlow(Graph graph, String sourceId, String sinkId) {
+        this.graph = graph;
+        this.network = graph.freeze();
+        this.source = graph.getNodeIndex(sourceId);
+        this.sink = graph.getNodeIndex(sinkId);
+        if (source == -1 || sink == -1) {
+            throw new IllegalArgumentException("Source or sink node not found.");
+        }
+
+        int n = network.getNodeCount();
+        int arcCount = network.getArcCount();
+        int edgeCount = network.getEdgeCount();
+
+        capacity = new double[arcCount];
+        cost = new double[arcCount];
+        flow = new double[arcCount];
+        for (int arc = 0; arc < arcCount; arc++) {
+            capacity[arc] = network.getCapacity(arc);
+            cost[arc] = network.getCost(arc);
+        }
+
+        potentials = new double[n];
+        imbalance = new double[n];
+        pending = new int[n];
+        isPending = new boolean[n];
+
+        previousFlow = new double[edgeCount];
+        edgeTouched = new boolean[edgeCount];
+        touchedEdges = new int[edgeCount];
+
+        queue = new IndexedDaryHeap();
+        distance = new double[n];
+        predArc = new int[n];
+        settled = new boolean[n];
+        settledNodes = new int[n];
+
+        if (source != sink) {
+            supply = Math.max(0, graph.getBalance(source));
+            imbalance[source] = supply;
+            imbalance[sink] = -supply;
+        }
+    }
+
+    /**
+     * Changes the capacity and cost of the first edge from sourceId to destId.
+     * @return false if there is no such edge
+     */
+    public boolean updateEdge(String sourceId, String destId, double newCapacity, double newCost) {
+        int u = graph.getNodeIndex(sourceId);
+        int v = graph.getNodeIndex(destId);
+        if (u == -1 || v == -1) {
+            return false;
+        }
+        for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+            if (network.isForward(arc) && network.getTarget(arc) == v) {
+                updateEdge(network.getEdge(arc), newCapacity, newCost);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Changes the capacity and cost of an edge, identified by the order in
+     * which it was added to the graph. The flow stays optimal only after the
+     * next reoptimize().
+     */
+    public void updateEdge(int edge, double newCapacity, double newCost) {
+        if (newCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        int arc = network.getForwardArc(edge);
+        int reverseArc = network.getReverse(arc);
+        capacity[arc] = newCapacity;
+        cost[arc] = newCost;
+        cost[reverseArc] = -newCost;
+
+        if (!initialized) {
+            return;
+        }
+        if (flow[arc] > newCapacity) {
+            push(reverseArc, flow[arc] - newCapacity);
+        }
+        saturateIfNegative(arc);
+        saturateIfNegative(reverseArc);
+    }
+
+    /**
+     * Adds amount to a node's balance in the graph. Only the source's balance
+     * bounds the flow, so changes to other nodes do not alter the solution.
+     */
+    public void updateBalance(String nodeId, double amount) {
+        int node = graph.getNodeIndex(nodeId);
+        if (node == -1) {
+            Log.warn(() -> "Error: Node " + nodeId + " not found.");
+            return;
+        }
+        graph.setBalance(nodeId, graph.getBalance(node) + amount);
+        if (node != source || source == sink) {
+            return;
+        }
+
+        double newSupply = Math.max(0, graph.getBalance(node));
+        imbalance[source] += newSupply - supply;
+        imbalance[sink] -= newSupply - supply;
+        supply = newSupply;
+    }
+
+    /**
+     * Restores a min-cost flow of maximum value (up to the source's balance)
+     * after the edits made since the last call. The first call solves from
+     * zero flow.
+     * @return One record per edge whose flow changed, with the change as amount
+     */
+    public List<TransactionRecord> reoptimize() {
+        if (!initialized) {
+            initPotentials();
+            initialized = true;
+        }
+
+        // Excess first goes back towards the source or on to a deficit, then
+        // deficits are refilled from the sink side, then the source tops up
+        while (augment(DRAIN_EXCESS)) { }
+        while (augment(FILL_DEFICIT)) { }
+        while (augment(AUGMENT)) { }
+
+        List<TransactionRecord> delta = new ArrayList<>();
+        for (int i = 0; i < touchedEdgeCount; i++) {
+            int edge = touchedEdges[i];
+            int arc = network.getForwardArc(edge);
+            double change = flow[arc] - previousFlow[edge];
+            if (Math.abs(change) > MIN_FLOW) {
+                delta.add(new TransactionRecord(graph.getNodeId(network.getTail(arc)),
+                        graph.getNodeId(network.getTarget(arc)), change, cost[arc]));
+            }
+            edgeTouched[edge] = false;
+        }
+        touchedEdgeCount = 0;
+        return delta;
+    }
+
+    public double getTotalCost() {
+        double totalCost = 0;
+        for (int e = 0; e < network.getEdgeCount(); e++) {
+            int arc = network.getForwardArc(e);
+            totalCost += cost[arc] * flow[arc];
+        }
+        return totalCost;
+    }
+
+    public double getTotalFlow() {
+        double totalFlow = 0;
+        for (int arc = network.firstArc(source), end = network.endArc(source); arc < end; arc++) {
+            totalFlow += flow[arc];
+        }
+        return totalFlow;
+    }
+
+    /**
+     * @return The full current flow, one record per edge that carries flow
+     */
+    public List<TransactionRecord> getTransactions() {
+        List<TransactionRecord> transactions = new ArrayList<>();
+        for (int e = 0; e < network.getEdgeCount(); e++) {
+            int arc = network.getForwardArc(e);
+            if (flow[arc] > MIN_FLOW) {
+                transactions.add(new TransactionRecord(graph.getNodeId(network.getTail(arc)),
+                        graph.getNodeId(network.getTarget(arc)), flow[arc], cost[arc]));
+            }
+        }
+        return transactions;
+    }
+
+    private double residual(int arc) {
+        return capacity[arc] - flow[arc];
+    }
+
+    private double reducedCost(int arc) {
+        return cost[arc] + potentials[network.getTail(arc)] - potentials[network.getTarget(arc)];
+    }
+
+    private void saturateIfNegative(int arc) {
+        if (residual(arc) > MIN_FLOW && reducedCost(arc) < -EPSILON) {
+            push(arc, residual(arc));
+        }
+    }
+
+    private void push(int arc, double amount) {
+        int edge = network.getEdge(arc);
+        if (!edgeTouched[edge]) {
+            edgeTouched[edge] = true;
+            previousFlow[edge] = flow[network.getForwardArc(edge)];
+            touchedEdges[touchedEdgeCount++] = edge;
+        }
+        flow[arc] += amount;
+        flow[network.getReverse(arc)] -= amount;
+        addImbalance(network.getTail(arc), -amount);
+        addImbalance(network.getTarget(arc), amount);
+    }
+
+    private void addImbalance(int node, double amount) {
+        imbalance[node] += amount;
+        if (node != source && node != sink && !isPending[node]) {
+            isPending[node] = true;
+            pending[pendingCount++] = node;
+        }
+    }
+
+    // Bellman-Ford from a virtual root joined to every node, so that all
+    // residual arcs get non-negative reduced costs, not only the reachable ones
+    private void initPotentials() {
+        int n = network.getNodeCount();
+        Arrays.fill(potentials, 0);
+        for (int round = 0; round < n - 1; round++) {
+            boolean changed = false;
+            for (int u = 0; u < n; u++) {
+                for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+                    if (residual(arc) <= MIN_FLOW) continue;
+                    int v = network.getTarget(arc);
+                    double newDist = potentials[u] + cost[arc];
+                    if (newDist < potentials[v] - EPSILON) {
+                        potentials[v] = newDist;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) break;
+        }
+    }
+
+    // Runs one shortest-path search for the given phase and pushes along the
+    // path found; returns false once the phase has nothing left to route
+    private boolean augment(int mode) {
+        int n = network.getNodeCount();
+        queue.reset(n);
+        Arrays.fill(distance, Double.MAX_VALUE);
+
+        boolean anySource = false;
+        if (mode == DRAIN_EXCESS) {
+            int kept = 0;
+            for (int i = 0; i < pendingCount; i++) {
+                int node = pending[i];
+                if (Math.abs(imbalance[node]) > MIN_FLOW) {
+                    pending[kept++] = node;
+                    if (imbalance[node] > 0) {
+                        addSource(node);
+                        anySource = true;
+                    }
+                } else {
+                    isPending[node] = false;
+                }
+            }
+            pendingCount = kept;
+            if (imbalance[sink] > MIN_FLOW) {
+                addSource(sink);
+                anySource = true;
+            }
+        } else if (mode == FILL_DEFICIT) {
+            boolean anyDeficit = false;
+            for (int i = 0; i < pendingCount; i++) {
+                anyDeficit |= imbalance[pending[i]] < -MIN_FLOW;
+            }
+            if (anyDeficit) {
+                addSource(sink);
+                anySource = true;
+                if (imbalance[source] > MIN_FLOW) {
+                    addSource(source);
+                }
+            }
+        } else if (imbalance[source] > MIN_FLOW && imbalance[sink] < -MIN_FLOW) {
+            addSource(source);
+            anySource = true;
+        }
+        if (!anySource) {
+            return false;
+        }
+
+        int target = -1;
+        while (!queue.isEmpty()) {
+            int u = queue.pop();
+            settled[u] = true;
+            settledNodes[settledCount++] = u;
+            if (isTarget(u, mode)) {
+                target = u;
+                break;
+            }
+
+            for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+                if (residual(arc) <= MIN_FLOW) continue;
+                int v = network.getTarget(arc);
+                if (settled[v]) continue;
+                double newDist = distance[u] + Math.max(0, reducedCost(arc));
+                if (newDist < distance[v]) {
+                    distance[v] = newDist;
+                    predArc[v] = arc;
+                    queue.push(v, newDist);
+                }
+            }
+        }
+
+        // Settled nodes move by their distance relative to the target, which
+        // keeps reduced costs non-negative and zero along the path
+        double targetDistance = target == -1 ? 0 : distance[target];
+        for (int i = 0; i < settledCount; i++) {
+            int node = settledNodes[i];
+            if (target != -1) {
+                potentials[node] += distance[node] - targetDistance;
+            }
+            settled[node] = false;
+        }
+        settledCount = 0;
+        if (target == -1) {
+            return false;
+        }
+
+        double amount = Double.MAX_VALUE;
+        int origin = target;
+        while (predArc[origin] != -1) {
+            int arc = predArc[origin];
+            amount = Math.min(amount, residual(arc));
+            origin = network.getTail(arc);
+        }
+        // The sink can always give back flow it received, and the source can
+        // always take back excess; everything else is limited by its imbalance
+        if (!(mode == FILL_DEFICIT && origin == sink)) {
+            amount = Math.min(amount, imbalance[origin]);
+        }
+        if (!(mode == DRAIN_EXCESS && target == source)) {
+            amount = Math.min(amount, -imbalance[target]);
+        }
+
+        for (int node = target; predArc[node] != -1; ) {
+            int arc = predArc[node];
+            push(arc, amount);
+            node = network.getTail(arc);
+        }
+        return true;
+    }
+
+    private void addSource(int node) {
+        distance[node] = 0;
+        predArc[node] = -1;
+        queue.push(node, 0);
+    }
+
+    private boolean isTarget(int node, int mode) {
+        if (mode == DRAIN_EXCESS) {
+            return node == source || imbalance[node] < -MIN_FLOW;
+        } else if (mode == FILL_DEFICIT) {
+            return node != sink && node != source && imbalance[node] < -MIN_FLOW;
+        }
+        return node == sink;
+    }
+}
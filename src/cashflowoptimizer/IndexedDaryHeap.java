@@ -0,0 +1,115 @@
+package cashflowoptimizer;
+
+import java.util.Arrays;
+
+/**
+ * Indexed d-ary min-heap with true decrease-key. Keys and positions live in
+ * primitive arrays indexed by node, so push and pop never allocate.
+ */
+public class IndexedDaryHeap implements ShortestPathQueue {
+    private final int arity;
+    private int[] heap;
+    private int[] position;
+    private double[] keys;
+    private int size;
+
+    public IndexedDaryHeap() {
+        this(4);
+    }
+
+    public IndexedDaryHeap(int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("Heap arity must be at least 2");
+        }
+        this.arity = arity;
+        this.heap = new int[0];
+        this.position = new int[0];
+        this.keys = new double[0];
+    }
+
+    @Override
+    public void reset(int nodeCount) {
+        if (position.length < nodeCount) {
+            heap = new int[nodeCount];
+            position = new int[nodeCount];
+            keys = new double[nodeCount];
+        }
+        Arrays.fill(position, -1);
+        size = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void push(int node, double key) {
+        int index = position[node];
+        if (index == -1) {
+            index = size++;
+            heap[index] = node;
+            position[node] = index;
+        } else if (key >= keys[node]) {
+            return;
+        }
+        keys[node] = key;
+        siftUp(index);
+    }
+
+    @Override
+    public int pop() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int index) {
+        int node = heap[index];
+        double key = keys[node];
+        while (index > 0) {
+            int parent = (index - 1) / arity;
+            int parentNode = heap[parent];
+            if (keys[parentNode] <= key) break;
+            heap[index] = parentNode;
+            position[parentNode] = index;
+            index = parent;
+        }
+        heap[index] = node;
+        position[node] = index;
+    }
+
+    private void siftDown(int index) {
+        int node = heap[index];
+        double key = keys[node];
+        while (true) {
+            int first = index * arity + 1;
+            if (first >= size) break;
+
+            int best = first;
+            double bestKey = keys[heap[first]];
+            int end = Math.min(first + arity, size);
+            for (int child = first + 1; child < end; child++) {
+                double childKey = keys[heap[child]];
+                if (childKey < bestKey) {
+                    best = child;
+                    bestKey = childKey;
+                }
+            }
+
+            if (bestKey >= key) break;
+            heap[index] = heap[best];
+            position[heap[index]] = index;
+            index = best;
+        }
+        heap[index] = node;
+        position[node] = index;
+    }
+}
@@ -0,0 +1,232 @@
+package cashflowoptimizer;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Streaming JSON writer laid out like financial_data.json: members of the
+ * outer objects and arrays go on their own indented lines, while any object
+ * or array inside an array is written on one line. Doubles can be written
+ * with a fixed number of decimals without going through String.format.
+ */
+public class JsonWriter implements Closeable, Flushable {
+    private static final int ARRAY = 1;
+    private static final int INLINE = 2;
+    private static final int NONEMPTY = 4;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final Writer out;
+    private final int decimals;
+    private int[] stack;
+    private int depth;
+    private boolean afterName;
+    private final char[] digits;
+
+    /**
+     * @param decimals Digits after the decimal point for doubles, or -1 to
+     *                 write them in full precision
+     */
+    public JsonWriter(Writer out, int decimals) {
+        if (decimals < -1 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Decimals must be between -1 and " + (POWERS_OF_TEN.length - 1));
+        }
+        this.out = out;
+        this.decimals = decimals;
+        this.stack = new int[32];
+        this.digits = new char[24];
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open(0, '{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open(ARRAY, '[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        int scope = stack[depth - 1];
+        if ((scope & ARRAY) != 0 || afterName) {
+            throw new IllegalStateException("Names belong directly inside an object");
+        }
+        separate(scope);
+        writeString(name);
+        out.write(": ");
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Writes a number; NaN and infinities, which JSON cannot express, are
+     * written as null.
+     */
+    public JsonWriter value(double value) throws IOException {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.write("null");
+        } else if (decimals < 0 || Math.abs(value) * POWERS_OF_TEN[decimals] >= 1e18) {
+            // Too large to scale into a long without overflowing
+            out.write(Double.toString(value));
+        } else {
+            long scale = POWERS_OF_TEN[decimals];
+            long scaled = Math.round(Math.abs(value) * scale);
+            if (value < 0 && scaled != 0) {
+                out.write('-');
+            }
+            writeLong(scaled / scale);
+            if (decimals > 0) {
+                out.write('.');
+                long fraction = scaled % scale;
+                for (long unit = scale / 10; unit > 0; unit /= 10) {
+                    out.write((char) ('0' + fraction / unit % 10));
+                }
+            }
+        }
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private JsonWriter open(int kind, char bracket) throws IOException {
+        boolean inline = depth > 0 && (stack[depth - 1] & (ARRAY | INLINE)) != 0;
+        beforeValue();
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = kind | (inline ? INLINE : 0);
+        out.write(bracket);
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        int scope = stack[--depth];
+        if ((scope & NONEMPTY) != 0 && (scope & INLINE) == 0) {
+            newline(depth);
+        }
+        out.write(bracket);
+        if (depth == 0) {
+            out.write('\n');
+        }
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (depth == 0) {
+            return;
+        }
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        int scope = stack[depth - 1];
+        if ((scope & ARRAY) == 0) {
+            throw new IllegalStateException("Values inside an object need a name");
+        }
+        separate(scope);
+    }
+
+    // Comma and line break or space before the next member of the innermost container
+    private void separate(int scope) throws IOException {
+        if ((scope & NONEMPTY) != 0) {
+            out.write(',');
+            if ((scope & INLINE) != 0) {
+                out.write(' ');
+            }
+        }
+        if ((scope & INLINE) == 0) {
+            newline(depth);
+        }
+        stack[depth - 1] = scope | NONEMPTY;
+    }
+
+    private void newline(int indent) throws IOException {
+        out.write('\n');
+        for (int i = 0; i < indent; i++) {
+            out.write("  ");
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            out.write(Long.toString(value));
+            return;
+        }
+        int start = digits.length;
+        boolean negative = value < 0;
+        long rest = Math.abs(value);
+        do {
+            digits[--start] = (char) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest > 0);
+        if (negative) {
+            digits[--start] = '-';
+        }
+        out.write(digits, start, digits.length - start);
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            out.write(value, start, i - start);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default: out.write(String.format("\\u%04x", (int) c));
+            }
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,196 @@
+package cashflowoptimizer;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Q-learning agent that approximates Q(state, action) as a dot product of a
+ * weight vector with the FeatureExtractor's features. Memory is O(features)
+ * however many states are visited, and what is learned for one state carries
+ * over to similar ones. Updates are plain SGD on the temporal-difference
+ * error and reuse two scratch vectors, so they do not allocate.
+ *
+ * Rewards are divided by the extractor's reward scale to keep the weights
+ * well conditioned; Q-values are therefore in those scaled units.
+ */
+public class LinearQAgent implements Agent {
+    private static final int MAGIC = 0x4C514131;  // "LQA1"
+
+    private final FeatureExtractor features;
+    private double[] weights;
+    private double[] current;
+    private double[] scratch;
+    private double learningRate;
+    private double discountFactor;
+    private double explorationRate;
+    private Random random;
+    private long updates;
+    private State selectedState;    // The last selection, whose features current holds
+    private Action selectedAction;
+
+    public LinearQAgent(FeatureExtractor features, double learningRate, double discountFactor, double explorationRate) {
+        this.features = features;
+        this.weights = new double[FeatureExtractor.FEATURE_COUNT];
+        this.current = new double[FeatureExtractor.FEATURE_COUNT];
+        this.scratch = new double[FeatureExtractor.FEATURE_COUNT];
+        this.learningRate = learningRate;
+        this.discountFactor = discountFactor;
+        this.explorationRate = explorationRate;
+        this.random = new Random();
+    }
+
+    @Override
+    public Action selectAction(State state, List<Action> possibleActions) {
+        if (possibleActions.isEmpty()) return null;
+
+        if (random.nextDouble() < explorationRate) {
+            return select(state, possibleActions.get(random.nextInt(possibleActions.size())));
+        }
+
+        Action best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int ties = 0;
+        for (Action action : possibleActions) {
+            double value = getQValue(state, action);
+            if (value > bestValue) {
+                bestValue = value;
+                best = action;
+                ties = 1;
+            } else if (value == bestValue && random.nextInt(++ties) == 0) {
+                best = action;  // Reservoir sampling breaks ties uniformly
+            }
+        }
+        return select(state, best);
+    }
+
+    // Keeps the chosen action's features from before its flow changes the workspace, for its update
+    private Action select(State state, Action action) {
+        features.extract(state, action, current);
+        selectedState = state;
+        selectedAction = action;
+        return action;
+    }
+
+    @Override
+    public void updateQValue(State state, Action action, double reward, State nextState, List<Action> nextActions) {
+        double maxNextQ = 0.0;
+        for (Action nextAction : nextActions) {
+            maxNextQ = Math.max(maxNextQ, getQValue(nextState, nextAction));
+        }
+
+        if (state != selectedState || action != selectedAction) {
+            features.extract(state, action, current);
+        }
+        selectedState = null;
+        selectedAction = null;
+        double currentQ = dot(current);
+        double error = reward / features.getRewardScale() + discountFactor * maxNextQ - currentQ;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] += learningRate * error * current[i];
+        }
+        updates++;
+    }
+
+    /**
+     * @return The model's Q-value estimate, in reward-scale units
+     */
+    public double getQValue(State state, Action action) {
+        features.extract(state, action, scratch);
+        return dot(scratch);
+    }
+
+    /**
+     * Sets the workspace the capacity features are read from while optimizing.
+     * @param workspace Workspace over the graph, or null for the edge capacities
+     */
+    public void setWorkspace(ResidualWorkspace workspace) {
+        features.setWorkspace(workspace);
+    }
+
+    /**
+     * @return A copy of the weights, indexed by the FeatureExtractor constants
+     */
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    @Override
+    public void decreaseExplorationRate(double factor) {
+        explorationRate *= factor;
+        if (explorationRate < 0.01) {
+            explorationRate = 0.01;
+        }
+    }
+
+    @Override
+    public void setExplorationRate(double rate) {
+        this.explorationRate = rate;
+    }
+
+    @Override
+    public double getExplorationRate() {
+        return explorationRate;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    @Override
+    public boolean hasImproved() {
+        return updates > 0;
+    }
+
+    /**
+     * Writes the weights to a small binary file, replacing it atomically.
+     */
+    @Override
+    public void save(String path) {
+        try {
+            AtomicFile.write(Paths.get(path), channel -> {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeInt(MAGIC);
+                out.writeInt(weights.length);
+                for (double weight : weights) {
+                    out.writeDouble(weight);
+                }
+                out.flush();
+            });
+            System.out.println("Model weights saved to: " + path);
+        } catch (IOException e) {
+            System.out.println("Error saving model weights: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void load(String path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(path))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a linear model file");
+            }
+            int count = in.readInt();
+            if (count != weights.length) {
+                throw new IOException("Expected " + weights.length + " weights but found " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                weights[i] = in.readDouble();
+            }
+            System.out.println("Model weights loaded from: " + path);
+        } catch (NoSuchFileException e) {
+            System.out.println("No model file found at: " + path);
+        } catch (IOException e) {
+            System.out.println("Error loading model weights: " + e.getMessage());
+        }
+    }
+
+    private double dot(double[] vector) {
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i] * vector[i];
+        }
+        return sum;
+    }
+}
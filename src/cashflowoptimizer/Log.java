@@ -0,0 +1,243 @@
+package cashflowoptimizer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous, leveled logging for the solver, agent and graph code.
+ *
+ * A message below the current level is dropped after one volatile read, and
+ * messages given as a Supplier are not even built. Enabled messages go into
+ * a lock-free ring buffer and a background thread builds and hands them to
+ * the listeners, so logging threads never format strings or wait on the
+ * console. A Supplier therefore runs on that thread and must only read
+ * values that do not change afterwards. When the ring is full, logging
+ * threads wait for room rather than lose messages.
+ *
+ * The console listener, which prints each message to System.out, is
+ * registered by default. The level starts at INFO or at the value of the
+ * cashflowoptimizer.log system property.
+ */
+public final class Log {
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+    /**
+     * Receives every message at or above the current level, on the logging thread.
+     */
+    public interface Listener {
+        void log(Event event);
+    }
+
+    /**
+     * Prints each message on its own line to the System.out of the moment.
+     */
+    public static final Listener CONSOLE = event -> System.out.println(event.getMessage());
+
+    private static volatile int threshold = initialLevel().ordinal();
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Multi-producer, single-consumer ring: producers claim sequence numbers from tail and the
+    // drainer takes them in order from head; drained counts the events already handed out
+    private static final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong();
+    private static volatile long head;
+    private static volatile long drained;
+    private static volatile boolean drainerParked;
+    private static final Thread drainer;
+
+    static {
+        listeners.add(CONSOLE);
+        drainer = new Thread(Log::drain, "log-writer");
+        drainer.setDaemon(true);
+        drainer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static LogLevel getLevel() {
+        return LogLevel.values()[threshold];
+    }
+
+    /**
+     * Sets the least severe level that is logged; OFF disables logging.
+     */
+    public static void setLevel(LogLevel level) {
+        threshold = level.ordinal();
+    }
+
+    public static boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= threshold;
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public static void log(LogLevel level, String message) {
+        if (level.ordinal() >= threshold) {
+            publish(new Event(level, message));
+        }
+    }
+
+    public static void log(LogLevel level, Supplier<String> message) {
+        if (level.ordinal() >= threshold) {
+            publish(new Event(level, message));
+        }
+    }
+
+    public static void debug(String message) {
+        log(LogLevel.DEBUG, message);
+    }
+
+    public static void debug(Supplier<String> message) {
+        log(LogLevel.DEBUG, message);
+    }
+
+    public static void info(String message) {
+        log(LogLevel.INFO, message);
+    }
+
+    public static void info(Supplier<String> message) {
+        log(LogLevel.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(LogLevel.WARN, message);
+    }
+
+    public static void warn(Supplier<String> message) {
+        log(LogLevel.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(LogLevel.ERROR, message);
+    }
+
+    public static void error(Supplier<String> message) {
+        log(LogLevel.ERROR, message);
+    }
+
+    /**
+     * Waits until every message logged before this call has reached the
+     * listeners. Returns at once when called from a listener.
+     */
+    public static void flush() {
+        if (Thread.currentThread() == drainer) {
+            return;
+        }
+        long target = tail.get();
+        while (drained < target && drainer.isAlive()) {
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(50_000L);
+        }
+    }
+
+    private static void publish(Event event) {
+        long sequence;
+        while (true) {
+            sequence = tail.get();
+            if (sequence - head >= CAPACITY) {
+                LockSupport.unpark(drainer);
+                Thread.yield();
+            } else if (tail.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        slots.set((int) sequence & MASK, event);
+        if (drainerParked) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    private static void drain() {
+        while (true) {
+            long sequence = head;
+            int slot = (int) sequence & MASK;
+            Event event = slots.get(slot);
+            if (event == null) {
+                // Empty, or claimed but not yet written; recheck after announcing the park
+                drainerParked = true;
+                if (slots.get(slot) == null) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                drainerParked = false;
+                continue;
+            }
+            slots.set(slot, null);
+            head = sequence + 1;
+            for (Listener listener : listeners) {
+                try {
+                    listener.log(event);
+                } catch (RuntimeException e) {
+                    // A failing listener must not stop the others or the drainer
+                }
+            }
+            drained = sequence + 1;
+        }
+    }
+
+    private static LogLevel initialLevel() {
+        String level = System.getProperty("cashflowoptimizer.log");
+        try {
+            return level == null ? LogLevel.INFO : LogLevel.valueOf(level.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return LogLevel.INFO;
+        }
+    }
+
+    /**
+     * One logged message. Its text is built on the logging thread the first
+     * time getMessage is called.
+     */
+    public static final class Event {
+        private final LogLevel level;
+        private final Thread thread;
+        private final long timeMillis;
+        private Object message;
+
+        Event(LogLevel level, Object message) {
+            this.level = level;
+            this.thread = Thread.currentThread();
+            this.timeMillis = System.currentTimeMillis();
+            this.message = message;
+        }
+
+        public LogLevel getLevel() {
+            return level;
+        }
+
+        /**
+         * @return The thread that logged the message
+         */
+        public Thread getThread() {
+            return thread;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public String getMessage() {
+            if (message instanceof Supplier) {
+                try {
+                    message = String.valueOf(((Supplier<?>) message).get());
+                } catch (RuntimeException e) {
+                    message = "Could not build log message: " + e;
+                }
+            }
+            return (String) message;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package cashflowoptimizer;
+
+/**
+ * Severity of a Log message, from least to most severe.
+ */
+public enum LogLevel {
+    DEBUG,  // Per-update detail such as balance changes
+    INFO,   // Progress such as per-iteration costs
+    WARN,   // Bad input that was skipped
+    ERROR,  // Failed I/O and other lost work
+    OFF     // As a threshold, disables all logging
+}
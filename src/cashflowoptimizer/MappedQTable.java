@@ -0,0 +1,420 @@
+package cashflowoptimizer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Read-only, memory-mapped view of a Q-table saved by RLAgent.save.
+ *
+ * File layout (big-endian, version 2):
+ * <pre>
+ *   header   magic, version, action count, state count, entry count and
+ *            the offsets of the sections below
+ *   actions  source and sink ids as modified UTF-8, then the route's edge
+ *            count (-1 for none) and edge indices; an action's position
+ *            is its id. Version 1 files have no route fields
+ *   states   long fingerprint[stateCount], sorted ascending, followed by
+ *            long firstEntry[stateCount + 1]
+ *   entries  int actionId[entryCount], sorted within each state, then
+ *            double value[entryCount]
+ * </pre>
+ * States are identified by State.getFingerprint(). Only the header and the
+ * action dictionary are read eagerly; a lookup binary-searches the mapped
+ * fingerprints, so pages are faulted in as they are touched.
+ */
+public class MappedQTable {
+    private static final int MAGIC = 0x51544231;  // "QTB1"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 56;
+    private static final int CHUNK_SHIFT = 30;  // Files larger than 2 GB are mapped in 1 GB chunks
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+    private final MappedByteBuffer[] chunks;
+    private final List<Action> actions;
+    private final Map<Action, Integer> actionIds;
+    private final int stateCount;
+    private final long entryCount;
+    private final long fingerprintsOffset;
+    private final long firstEntryOffset;
+    private final long actionIdsOffset;
+    private final long valuesOffset;
+
+    private MappedQTable(MappedByteBuffer[] chunks) throws IOException {
+        this.chunks = chunks;
+        if (getInt(0) != MAGIC) {
+            throw new IOException("Not a Q-table file");
+        }
+        int version = getInt(4);
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported Q-table version " + getInt(4));
+        }
+        int actionCount = getInt(8);
+        stateCount = getInt(12);
+        entryCount = getLong(16);
+        long actionsOffset = getLong(24);
+        fingerprintsOffset = getLong(32);
+        firstEntryOffset = fingerprintsOffset + 8L * stateCount;
+        actionIdsOffset = getLong(40);
+        valuesOffset = getLong(48);
+
+        actions = new ArrayList<>(actionCount);
+        actionIds = new HashMap<>();
+        long position = actionsOffset;
+        for (int id = 0; id < actionCount; id++) {
+            String[] ids = new String[2];
+            for (int k = 0; k < 2; k++) {
+                int length = getShort(position) & 0xFFFF;
+                byte[] bytes = new byte[length + 2];
+                for (int b = 0; b < bytes.length; b++) {
+                    bytes[b] = getByte(position + b);
+                }
+                ids[k] = new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+                position += bytes.length;
+            }
+            int[] route = null;
+            if (version >= 2) {
+                int length = getUnalignedInt(position);
+                position += 4;
+                if (length >= 0) {
+                    route = new int[length];
+                    for (int i = 0; i < length; i++, position += 4) {
+                        route[i] = getUnalignedInt(position);
+                    }
+                }
+            }
+            Action action = new Action(ids[0], ids[1], route);
+            actions.add(action);
+            actionIds.put(action, id);
+        }
+    }
+
+    /**
+     * Maps a Q-table file. The file stays mapped until the table is garbage
+     * collected, and replacing it through save is safe on POSIX systems.
+     */
+    public static MappedQTable open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Q-table file is truncated");
+            }
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+            }
+            return new MappedQTable(chunks);
+        }
+    }
+
+    public int getActionCount() {
+        return actions.size();
+    }
+
+    public Action getAction(int actionId) {
+        return actions.get(actionId);
+    }
+
+    /**
+     * @return The action's id in this file, or -1 if it has no Q-values here
+     */
+    public int findAction(Action action) {
+        Integer id = actionIds.get(action);
+        return id == null ? -1 : id;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public long getFingerprint(int stateIndex) {
+        return getLong(fingerprintsOffset + 8L * stateIndex);
+    }
+
+    /**
+     * @return The index of the state with this fingerprint, or -1
+     */
+    public int findState(long fingerprint) {
+        int low = 0;
+        int high = stateCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = getFingerprint(mid);
+            if (value < fingerprint) {
+                low = mid + 1;
+            } else if (value > fingerprint) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public long getFirstEntry(int stateIndex) {
+        return getLong(firstEntryOffset + 8L * stateIndex);
+    }
+
+    public int getEntryAction(long entry) {
+        return getInt(actionIdsOffset + 4L * entry);
+    }
+
+    public double getEntryValue(long entry) {
+        return getDouble(valuesOffset + 8L * entry);
+    }
+
+    public double get(int stateIndex, int actionId, double defaultValue) {
+        if (stateIndex < 0 || actionId < 0) {
+            return defaultValue;
+        }
+        for (long entry = getFirstEntry(stateIndex), end = getFirstEntry(stateIndex + 1); entry < end; entry++) {
+            int id = getEntryAction(entry);
+            if (id == actionId) {
+                return getEntryValue(entry);
+            } else if (id > actionId) {
+                break;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Writes a Q-table file atomically: the data goes to a temporary file in
+     * the same directory, which then replaces the target.
+     *
+     * @param actions Action dictionary; when base is given it must start with
+     *                base's actions in base's order
+     * @param fingerprints State fingerprint of each in-memory entry
+     * @param entryActions Action id of each in-memory entry
+     * @param entryValues Q-value of each in-memory entry
+     * @param count Number of in-memory entries
+     * @param base Previously loaded table whose entries are kept unless
+     *             overridden by an in-memory entry, or null
+     */
+    public static void write(Path path, List<Action> actions, long[] fingerprints, int[] entryActions,
+                             double[] entryValues, int count, MappedQTable base) throws IOException {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> fingerprints[a] != fingerprints[b]
+                ? Long.compare(fingerprints[a], fingerprints[b])
+                : Integer.compare(entryActions[a], entryActions[b]));
+        EntryMerger merger = new EntryMerger(fingerprints, entryActions, entryValues, order, base);
+
+        // First pass sizes the sections, second pass fills them
+        long[] counts = new long[2];
+        merger.run(new EntrySink() {
+            public void state(long fingerprint, long firstEntry) { counts[0]++; }
+            public void entry(int actionId, double value) { counts[1]++; }
+        });
+        int stateCount = (int) counts[0];
+        long entryCount = counts[1];
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        DataOutputStream dictionaryOut = new DataOutputStream(dictionary);
+        for (Action action : actions) {
+            dictionaryOut.writeUTF(action.getSourceNodeId());
+            dictionaryOut.writeUTF(action.getSinkNodeId());
+            int[] route = action.getRoute();
+            dictionaryOut.writeInt(route == null ? -1 : route.length);
+            if (route != null) {
+                for (int edge : route) {
+                    dictionaryOut.writeInt(edge);
+                }
+            }
+        }
+        dictionaryOut.flush();
+
+        long fingerprintsOffset = align(HEADER_SIZE + dictionary.size());
+        long firstEntryOffset = fingerprintsOffset + 8L * stateCount;
+        long actionIdsOffset = firstEntryOffset + 8L * (stateCount + 1);
+        long valuesOffset = align(actionIdsOffset + 4L * entryCount);
+
+        AtomicFile.write(path, channel -> {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(actions.size()).putInt(stateCount)
+                  .putLong(entryCount).putLong(HEADER_SIZE).putLong(fingerprintsOffset)
+                  .putLong(actionIdsOffset).putLong(valuesOffset);
+            header.flip();
+            writeFully(channel, header, 0);
+            writeFully(channel, ByteBuffer.wrap(dictionary.toByteArray()), HEADER_SIZE);
+
+            SectionWriter fingerprintsOut = new SectionWriter(channel, fingerprintsOffset);
+            SectionWriter firstEntryOut = new SectionWriter(channel, firstEntryOffset);
+            SectionWriter actionIdsOut = new SectionWriter(channel, actionIdsOffset);
+            SectionWriter valuesOut = new SectionWriter(channel, valuesOffset);
+            merger.run(new EntrySink() {
+                public void state(long fingerprint, long firstEntry) throws IOException {
+                    fingerprintsOut.putLong(fingerprint);
+                    firstEntryOut.putLong(firstEntry);
+                }
+                public void entry(int actionId, double value) throws IOException {
+                    actionIdsOut.putInt(actionId);
+                    valuesOut.putDouble(value);
+                }
+            });
+            firstEntryOut.putLong(entryCount);
+            fingerprintsOut.flush();
+            firstEntryOut.flush();
+            actionIdsOut.flush();
+            valuesOut.flush();
+        });
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private byte getByte(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].get((int) (position & (CHUNK_SIZE - 1)));
+    }
+
+    private short getShort(long position) {
+        // The action dictionary is not aligned, so read byte by byte
+        return (short) ((getByte(position) << 8) | (getByte(position + 1) & 0xFF));
+    }
+
+    private int getUnalignedInt(long position) {
+        return (getShort(position) << 16) | (getShort(position + 2) & 0xFFFF);
+    }
+
+    private int getInt(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & (CHUNK_SIZE - 1)));
+    }
+
+    private long getLong(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & (CHUNK_SIZE - 1)));
+    }
+
+    private double getDouble(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getDouble((int) (position & (CHUNK_SIZE - 1)));
+    }
+
+    private interface EntrySink {
+        void state(long fingerprint, long firstEntry) throws IOException;
+        void entry(int actionId, double value) throws IOException;
+    }
+
+    // Merge-joins the sorted in-memory entries with the base file's states
+    private static class EntryMerger {
+        private final long[] fingerprints;
+        private final int[] entryActions;
+        private final double[] entryValues;
+        private final Integer[] order;
+        private final MappedQTable base;
+
+        EntryMerger(long[] fingerprints, int[] entryActions, double[] entryValues, Integer[] order, MappedQTable base) {
+            this.fingerprints = fingerprints;
+            this.entryActions = entryActions;
+            this.entryValues = entryValues;
+            this.order = order;
+            this.base = base;
+        }
+
+        void run(EntrySink sink) throws IOException {
+            int baseStates = base == null ? 0 : base.getStateCount();
+            int i = 0;
+            int j = 0;
+            long written = 0;
+            while (i < order.length || j < baseStates) {
+                long memoryFingerprint = i < order.length ? fingerprints[order[i]] : Long.MAX_VALUE;
+                long baseFingerprint = j < baseStates ? base.getFingerprint(j) : Long.MAX_VALUE;
+                boolean fromMemory = i < order.length && (j == baseStates || memoryFingerprint <= baseFingerprint);
+                boolean fromBase = j < baseStates && (i == order.length || baseFingerprint <= memoryFingerprint);
+                long fingerprint = fromMemory ? memoryFingerprint : baseFingerprint;
+                sink.state(fingerprint, written);
+
+                int memoryEnd = i;
+                while (fromMemory && memoryEnd < order.length && fingerprints[order[memoryEnd]] == fingerprint) {
+                    memoryEnd++;
+                }
+                long entry = fromBase ? base.getFirstEntry(j) : 0;
+                long baseEnd = fromBase ? base.getFirstEntry(j + 1) : 0;
+
+                while (i < memoryEnd || entry < baseEnd) {
+                    int memoryAction = i < memoryEnd ? entryActions[order[i]] : Integer.MAX_VALUE;
+                    int baseAction = entry < baseEnd ? base.getEntryAction(entry) : Integer.MAX_VALUE;
+                    if (memoryAction <= baseAction) {
+                        // In-memory values override the file; fingerprint collisions keep the last one
+                        int last = i;
+                        while (last + 1 < memoryEnd && entryActions[order[last + 1]] == memoryAction) {
+                            last++;
+                        }
+                        sink.entry(memoryAction, entryValues[order[last]]);
+                        i = last + 1;
+                        if (baseAction == memoryAction) {
+                            entry++;
+                        }
+                    } else {
+                        sink.entry(baseAction, base.getEntryValue(entry));
+                        entry++;
+                    }
+                    written++;
+                }
+                i = memoryEnd;
+                if (fromBase) {
+                    j++;
+                }
+            }
+        }
+    }
+
+    // Buffered sequential writer for one section of the file
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+
+        SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(1 << 16);
+            this.position = position;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            long start = position;
+            while (buffer.hasRemaining()) {
+                start += channel.write(buffer, start);
+            }
+            position = start;
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
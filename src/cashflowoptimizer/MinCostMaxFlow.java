@@ -2,25 +2,76 @@ package cashflowoptimizer;
 
 import java.util.*;
 
-public class MinCostMaxFlow {
+public class MinCostMaxFlow implements FlowSolver {
+    private static final double EPSILON = 1e-9;
+    // Residual capacity at or below this is treated as saturated
+    private static final double MIN_FLOW = 1e-6;
+
     private Graph graph;
+    private CsrGraph network;
+    private ResidualWorkspace workspace;
+    private boolean commitToGraph;
     private double totalCost;
     private double totalFlow;
     private List<TransactionRecord> transactions;
 
+    // Primal-dual mode: Dijkstra runs on reduced costs using node potentials
+    private boolean usePotentials;
+    private boolean bellmanFordSeeding;
+    private double[] potentials;
+    private boolean potentialsSupplied;
+    private final boolean queueMonotone;
+
+    private Dijkstra dijkstra;
+
     public MinCostMaxFlow(Graph graph) {
-        this.graph = graph;
+        this(graph, new IndexedDaryHeap());
+    }
+
+    /**
+     * Creates a solver whose shortest-path step uses the given queue, e.g. an
+     * IndexedDaryHeap of some arity or a RadixHeapQueue for integer costs.
+     * A monotone queue such as RadixHeapQueue switches potentials on, since
+     * it cannot take the negative costs of reverse arcs.
+     * @param graph The graph to solve on
+     * @param queue The priority queue for the Dijkstra step
+     */
+    public MinCostMaxFlow(Graph graph, ShortestPathQueue queue) {
+        this(new ResidualWorkspace(graph), queue);
+        this.commitToGraph = true;
+    }
+
+    /**
+     * Creates a solver that keeps flow and balances in the given workspace
+     * and leaves the graph untouched. Reset the workspace between solves to
+     * start again from zero flow.
+     * @param workspace The residual state to solve in
+     */
+    public MinCostMaxFlow(ResidualWorkspace workspace) {
+        this(workspace, new IndexedDaryHeap());
+    }
+
+    public MinCostMaxFlow(ResidualWorkspace workspace, ShortestPathQueue queue) {
+        this.graph = workspace.getGraph();
+        this.network = workspace.getNetwork();
+        this.workspace = workspace;
+        this.commitToGraph = false;
         this.totalCost = 0;
         this.totalFlow = 0;
         this.transactions = new ArrayList<>();
+        this.usePotentials = queue.isMonotone();
+        this.bellmanFordSeeding = true;
+        this.queueMonotone = queue.isMonotone();
+        this.dijkstra = new Dijkstra(network.getNodeCount(), queue);
     }
 
+    @Override
     public void computeMinCostMaxFlow(String sourceId, String sinkId) {
         int source = graph.getNodeIndex(sourceId);
         int sink = graph.getNodeIndex(sinkId);
 
         if (source == -1 || sink == -1) {
-            System.out.println("Source or sink node not found.");
+            Log.warn("Source or sink node not found.");
             return;
         }
 
@@ -28,28 +79,35 @@ public class MinCostMaxFlow {
         totalFlow = 0;
         transactions.clear();
 
+        if (usePotentials) {
+            initPotentials(source);
+        }
+
         // Successive Shortest Path Algorithm
         while (true) {
-            Dijkstra dijkstra = new Dijkstra(graph, source);
-            List<Edge> path = dijkstra.getShortestPathTo(sink);
+            dijkstra.run(source, usePotentials ? potentials : null);
+            int[] path = dijkstra.getShortestPathTo(sink);
 
-            if (path.isEmpty()) {
+            if (path.length == 0) {
                 break; // No more augmenting paths
             }
 
+            if (usePotentials) {
+                dijkstra.updatePotentials(potentials);
+            }
+
             // Find minimum residual capacity
             double minResidualCapacity = Double.MAX_VALUE;
-            for (Edge edge : path) {
-                minResidualCapacity = Math.min(minResidualCapacity, edge.getResidualCapacity());
+            for (int arc : path) {
+                minResidualCapacity = Math.min(minResidualCapacity, workspace.getResidualCapacity(arc));
             }
 
-            if (minResidualCapacity <= 1e-6) {
+            if (minResidualCapacity <= MIN_FLOW) {
                 break; // No more capacity
             }
 
             // Check source node balance before flow
-            String topSourceNodeId = graph.getNodeId(path.get(0).getSource());
-            double availableFunds = graph.getBalance(topSourceNodeId);
+            double availableFunds = workspace.getBalance(source);
 
             if (minResidualCapacity > availableFunds) {
                 minResidualCapacity = availableFunds;
@@ -60,96 +118,219 @@ public class MinCostMaxFlow {
             }
 
             // Augment flow along the path
-            for (Edge edge : path) {
-                edge.addFlow(minResidualCapacity);
-
-                String srcId = graph.getNodeId(edge.getSource());
-                String dstId = graph.getNodeId(edge.getDest());
+            for (int arc : path) {
+                workspace.addFlow(arc, minResidualCapacity);
 
-                // Update node balances
-                graph.setBalance(srcId, -minResidualCapacity);
-                graph.setBalance(dstId, minResidualCapacity);
+                String srcId = graph.getNodeId(network.getTail(arc));
+                String dstId = graph.getNodeId(network.getTarget(arc));
 
-                totalCost += edge.getCost() * minResidualCapacity;
+                totalCost += network.getCost(arc) * minResidualCapacity;
 
                 // Log transaction
-                transactions.add(new TransactionRecord(srcId, dstId, minResidualCapacity, edge.getCost()));
+                transactions.add(new TransactionRecord(srcId, dstId, minResidualCapacity, network.getCost(arc)));
             }
 
+            // Funds leave the source and arrive at the sink; intermediate nodes net to zero
+            workspace.addBalance(source, -minResidualCapacity);
+            workspace.addBalance(sink, minResidualCapacity);
+
             totalFlow += minResidualCapacity;
         }
+
+        if (commitToGraph) {
+            workspace.commitBalances();
+        }
     }
 
+    @Override
     public double getTotalCost() {
         return totalCost;
     }
 
+    @Override
     public double getTotalFlow() {
         return totalFlow;
     }
 
+    @Override
     public List<TransactionRecord> getTransactions() {
         return transactions;
     }
 
-    // Inner Dijkstra class
+    /**
+     * Switches to primal-dual successive shortest paths: node potentials are
+     * kept between augmentations and Dijkstra runs on reduced costs, which
+     * stay non-negative even though reverse arcs carry negative costs.
+     * @param usePotentials true to search on reduced costs
+     */
+    public void setUsePotentials(boolean usePotentials) {
+        if (!usePotentials && queueMonotone) {
+            throw new IllegalArgumentException("A monotone shortest-path queue needs potentials");
+        }
+        this.usePotentials = usePotentials;
+    }
+
+    /**
+     * Controls whether missing potentials are seeded with one Bellman-Ford
+     * pass from the source. Without seeding they start at zero, which is only
+     * valid when no residual arc has a negative cost.
+     * @param bellmanFordSeeding true to seed with Bellman-Ford
+     */
+    public void setBellmanFordSeeding(boolean bellmanFordSeeding) {
+        this.bellmanFordSeeding = bellmanFordSeeding;
+    }
+
+    /**
+     * Gets the node potentials left by the last primal-dual solve, indexed by
+     * graph node index. They stay valid for the residual state the solve
+     * left behind and can be handed to another solver on that state through
+     * setPotentials to skip the seeding pass.
+     * @return The potentials, or null if no primal-dual solve has run
+     */
+    public double[] getPotentials() {
+        return potentials;
+    }
+
+    /**
+     * Supplies starting potentials for the next primal-dual solve. They must
+     * give non-negative reduced costs on every residual arc. Without this the
+     * next solve seeds fresh potentials, since the workspace may have been
+     * reset since the last one.
+     * @param potentials Potentials indexed by graph node index
+     */
+    public void setPotentials(double[] potentials) {
+        if (potentials != null && potentials.length != network.getNodeCount()) {
+            throw new IllegalArgumentException("Expected " + network.getNodeCount()
+                    + " potentials but got " + potentials.length);
+        }
+        this.potentials = potentials;
+        this.potentialsSupplied = potentials != null;
+    }
+
+    private void initPotentials(int source) {
+        if (potentialsSupplied) {
+            potentialsSupplied = false;
+            return;
+        }
+        int n = network.getNodeCount();
+        if (potentials == null) {
+            potentials = new double[n];
+        }
+        if (bellmanFordSeeding) {
+            bellmanFord(source, potentials);
+        } else {
+            Arrays.fill(potentials, 0);
+        }
+    }
+
+    // Shortest distances over residual arcs; unreachable nodes keep potential 0
+    private void bellmanFord(int source, double[] distance) {
+        int n = network.getNodeCount();
+        Arrays.fill(distance, Double.MAX_VALUE);
+        distance[source] = 0;
+
+        for (int round = 0; round < n - 1; round++) {
+            boolean changed = false;
+            for (int u = 0; u < n; u++) {
+                if (distance[u] == Double.MAX_VALUE) continue;
+                for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+                    if (workspace.getResidualCapacity(arc) <= MIN_FLOW) continue;
+                    int v = network.getTarget(arc);
+                    double newDist = distance[u] + network.getCost(arc);
+                    if (newDist < distance[v] - EPSILON) {
+                        distance[v] = newDist;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) break;
+        }
+
+        for (int u = 0; u < n; u++) {
+            if (distance[u] == Double.MAX_VALUE) {
+                distance[u] = 0;
+            }
+        }
+    }
+
+    // Inner Dijkstra class, reused across augmentations
     private class Dijkstra {
-        private Graph graph;
         private double[] distance;
-        private int[] previous;
-        private Edge[] previousEdge;
+        private int[] previousArc;
         private boolean[] visited;
+        private ShortestPathQueue queue;
         private int source;
 
-        public Dijkstra(Graph graph, int source) {
-            this.graph = graph;
-            this.source = source;
-            int n = graph.getNodeCount();
-
+        public Dijkstra(int n, ShortestPathQueue queue) {
+            this.queue = queue;
             distance = new double[n];
-            previous = new int[n];
-            previousEdge = new Edge[n];
+            previousArc = new int[n];
             visited = new boolean[n];
+        }
+
+        public void run(int source, double[] potentials) {
+            this.source = source;
 
             Arrays.fill(distance, Double.MAX_VALUE);
-            Arrays.fill(previous, -1);
+            Arrays.fill(previousArc, -1);
+            Arrays.fill(visited, false);
 
             distance[source] = 0;
 
-            PriorityQueue<Integer> queue = new PriorityQueue<>(Comparator.comparingDouble(node -> distance[node]));
-            queue.offer(source);
+            queue.reset(distance.length);
+            queue.push(source, 0);
 
             while (!queue.isEmpty()) {
-                int u = queue.poll();
+                int u = queue.pop();
 
                 if (visited[u]) continue;
                 visited[u] = true;
 
-                for (Edge edge : graph.getAdjacentEdges(u)) {
-                    if (edge.getResidualCapacity() <= 0) continue;
+                for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+                    if (workspace.getResidualCapacity(arc) <= MIN_FLOW) continue;
 
-                    int v = edge.getDest();
-                    double newDist = distance[u] + edge.getCost();
+                    int v = network.getTarget(arc);
+                    double arcCost = network.getCost(arc);
+                    if (potentials != null) {
+                        // Reduced cost; clamp rounding noise so Dijkstra stays valid
+                        arcCost = Math.max(0, arcCost + potentials[u] - potentials[v]);
+                    }
+                    double newDist = distance[u] + arcCost;
 
                     if (newDist < distance[v]) {
                         distance[v] = newDist;
-                        previous[v] = u;
-                        previousEdge[v] = edge;
-                        queue.offer(v);
+                        previousArc[v] = arc;
+                        if (!visited[v]) {
+                            queue.push(v, newDist);
+                        }
                     }
                 }
             }
         }
 
-        public List<Edge> getShortestPathTo(int target) {
-            List<Edge> path = new ArrayList<>();
-            if (distance[target] == Double.MAX_VALUE) return path;
+        // Johnson update: reduced costs stay non-negative on the new residual graph
+        public void updatePotentials(double[] potentials) {
+            for (int v = 0; v < potentials.length; v++) {
+                if (visited[v]) {
+                    potentials[v] += distance[v];
+                }
+            }
+        }
+
+        public int[] getShortestPathTo(int target) {
+            if (distance[target] == Double.MAX_VALUE) return new int[0];
+
+            int length = 0;
+            for (int current = target; current != source; current = network.getTail(previousArc[current])) {
+                length++;
+            }
 
+            int[] path = new int[length];
             int current = target;
             while (current != source) {
-                Edge edge = previousEdge[current];
-                path.add(0, edge);
-                current = previous[current];
+                int arc = previousArc[current];
+                path[--length] = arc;
+                current = network.getTail(arc);
             }
             return path;
         }
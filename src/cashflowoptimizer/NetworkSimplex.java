@@ -0,0 +1,487 @@
+package cashflowoptimizer;
+
+import java.util.*;
+
+/**
+ * Primal network simplex engine with a strongly feasible spanning-tree basis
+ * and block-search pivoting.
+ *
+ * The s-t problem is posed as a b-flow: the source supplies F (its balance,
+ * capped by its outgoing capacity), the sink demands F, and a bypass arc
+ * from source to sink with a prohibitive cost absorbs whatever cannot be
+ * routed. Minimising cost therefore maximises the real flow first and its
+ * cost second, which matches the successive-shortest-path result.
+ */
+public class NetworkSimplex implements FlowSolver {
+    private static final double EPSILON = 1e-9;
+    private static final double BLOCK_SIZE_FACTOR = 1.0;
+    private static final int MIN_BLOCK_SIZE = 10;
+
+    private static final int STATE_UPPER = -1;
+    private static final int STATE_TREE = 0;
+    private static final int STATE_LOWER = 1;
+    private static final int DIR_UP = 1;
+    private static final int DIR_DOWN = -1;
+
+    private Graph graph;
+    private CsrGraph network;
+    private ResidualWorkspace workspace;
+    private boolean commitToGraph;
+    private double totalCost;
+    private double totalFlow;
+    private List<TransactionRecord> transactions;
+
+    // Arc data: graph edges, then the bypass arc, then one artificial arc per node
+    private int nodeNum;
+    private int searchArcNum;
+    private int root;
+    private int[] source;
+    private int[] target;
+    private double[] cap;
+    private double[] cost;
+    private double[] flow;
+    private int[] state;
+
+    // Spanning tree data
+    private double[] pi;
+    private int[] parent;
+    private int[] pred;
+    private int[] predDir;
+    private int[] thread;
+    private int[] revThread;
+    private int[] succNum;
+    private int[] lastSucc;
+    private int[] dirtyRevs;
+
+    // Pivot data
+    private int blockSize;
+    private int nextArc;
+    private int inArc;
+    private int join;
+    private int uIn;
+    private int vIn;
+    private int uOut;
+    private double delta;
+
+    public NetworkSimplex(Graph graph) {
+        this(new ResidualWorkspace(graph));
+        this.commitToGraph = true;
+    }
+
+    /**
+     * Creates a solver that keeps flow and balances in the given workspace
+     * and leaves the graph untouched.
+     * @param workspace The residual state to solve in
+     */
+    public NetworkSimplex(ResidualWorkspace workspace) {
+        this.graph = workspace.getGraph();
+        this.network = workspace.getNetwork();
+        this.workspace = workspace;
+        this.commitToGraph = false;
+        this.totalCost = 0;
+        this.totalFlow = 0;
+        this.transactions = new ArrayList<>();
+    }
+
+    @Override
+    public void computeMinCostMaxFlow(String sourceId, String sinkId) {
+        int s = graph.getNodeIndex(sourceId);
+        int t = graph.getNodeIndex(sinkId);
+
+        if (s == -1 || t == -1) {
+            Log.warn("Source or sink node not found.");
+            return;
+        }
+
+        totalCost = 0;
+        totalFlow = 0;
+        transactions.clear();
+
+        if (s == t) {
+            return;
+        }
+
+        double outCapacity = 0;
+        for (int arc = network.firstArc(s), end = network.endArc(s); arc < end; arc++) {
+            if (network.isForward(arc)) {
+                outCapacity += Math.max(0, workspace.getResidualCapacity(arc));
+            }
+        }
+        double demand = Math.min(workspace.getBalance(s), outCapacity);
+        if (demand <= 1e-6) {
+            return;
+        }
+
+        init(s, t, demand);
+        while (findEnteringArc()) {
+            findJoinNode();
+            boolean change = findLeavingArc();
+            changeFlow(change);
+            if (change) {
+                updateTreeStructure();
+                updatePotential();
+            }
+        }
+
+        int edgeCount = network.getEdgeCount();
+        for (int e = 0; e < edgeCount; e++) {
+            double f = flow[e];
+            if (f <= EPSILON) continue;
+
+            int arc = network.getForwardArc(e);
+            workspace.addFlow(arc, f);
+            totalCost += cost[e] * f;
+            transactions.add(new TransactionRecord(graph.getNodeId(source[e]), graph.getNodeId(target[e]), f, cost[e]));
+        }
+        totalFlow = demand - flow[edgeCount];
+
+        workspace.addBalance(s, -totalFlow);
+        workspace.addBalance(t, totalFlow);
+        if (commitToGraph) {
+            workspace.commitBalances();
+        }
+    }
+
+    @Override
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    @Override
+    public double getTotalFlow() {
+        return totalFlow;
+    }
+
+    @Override
+    public List<TransactionRecord> getTransactions() {
+        return transactions;
+    }
+
+    private void init(int s, int t, double demand) {
+        nodeNum = network.getNodeCount();
+        int edgeCount = network.getEdgeCount();
+        searchArcNum = edgeCount + 1;
+        int allArcNum = searchArcNum + nodeNum;
+        root = nodeNum;
+
+        source = new int[allArcNum];
+        target = new int[allArcNum];
+        cap = new double[allArcNum];
+        cost = new double[allArcNum];
+        flow = new double[allArcNum];
+        state = new int[allArcNum];
+
+        pi = new double[nodeNum + 1];
+        parent = new int[nodeNum + 1];
+        pred = new int[nodeNum + 1];
+        predDir = new int[nodeNum + 1];
+        thread = new int[nodeNum + 1];
+        revThread = new int[nodeNum + 1];
+        succNum = new int[nodeNum + 1];
+        lastSucc = new int[nodeNum + 1];
+        dirtyRevs = new int[nodeNum + 1];
+
+        // Graph edges on their current residual capacity, starting at the lower bound
+        double costSum = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            int arc = network.getForwardArc(e);
+            source[e] = network.getTail(arc);
+            target[e] = network.getTarget(arc);
+            cap[e] = Math.max(0, workspace.getResidualCapacity(arc));
+            cost[e] = network.getCost(arc);
+            state[e] = STATE_LOWER;
+            costSum += Math.abs(cost[e]);
+        }
+
+        // Bypass arc: any unit it carries costs more than every real route
+        double bypassCost = costSum + 1;
+        source[edgeCount] = s;
+        target[edgeCount] = t;
+        cap[edgeCount] = demand;
+        cost[edgeCount] = bypassCost;
+        state[edgeCount] = STATE_LOWER;
+
+        double artificialCost = (costSum + bypassCost + 1) * (nodeNum + 1);
+
+        parent[root] = -1;
+        pred[root] = -1;
+        thread[root] = 0;
+        revThread[0] = root;
+        succNum[root] = nodeNum + 1;
+        lastSucc[root] = root - 1;
+        pi[root] = 0;
+
+        // Initial basis: a star of artificial arcs around the root
+        for (int u = 0, e = searchArcNum; u < nodeNum; u++, e++) {
+            double supply = u == s ? demand : (u == t ? -demand : 0);
+            parent[u] = root;
+            pred[u] = e;
+            thread[u] = u + 1;
+            revThread[u + 1] = u;
+            succNum[u] = 1;
+            lastSucc[u] = u;
+            cap[e] = Double.POSITIVE_INFINITY;
+            state[e] = STATE_TREE;
+            if (supply >= 0) {
+                predDir[u] = DIR_UP;
+                pi[u] = 0;
+                source[e] = u;
+                target[e] = root;
+                flow[e] = supply;
+                cost[e] = 0;
+            } else {
+                predDir[u] = DIR_DOWN;
+                pi[u] = artificialCost;
+                source[e] = root;
+                target[e] = u;
+                flow[e] = -supply;
+                cost[e] = artificialCost;
+            }
+        }
+
+        blockSize = Math.max((int) Math.ceil(BLOCK_SIZE_FACTOR * Math.sqrt(searchArcNum)), MIN_BLOCK_SIZE);
+        nextArc = 0;
+    }
+
+    // Block search pivot rule: scan blocks of arcs and take the most violating one
+    private boolean findEnteringArc() {
+        double min = -EPSILON;
+        int count = blockSize;
+        int found = -1;
+        int e;
+
+        for (e = nextArc; e < searchArcNum; e++) {
+            double c = state[e] * (cost[e] + pi[source[e]] - pi[target[e]]);
+            if (c < min) {
+                min = c;
+                found = e;
+            }
+            if (--count == 0) {
+                if (found != -1) {
+                    nextArc = e + 1 < searchArcNum ? e + 1 : 0;
+                    inArc = found;
+                    return true;
+                }
+                count = blockSize;
+            }
+        }
+        for (e = 0; e < nextArc; e++) {
+            double c = state[e] * (cost[e] + pi[source[e]] - pi[target[e]]);
+            if (c < min) {
+                min = c;
+                found = e;
+            }
+            if (--count == 0) {
+                if (found != -1) {
+                    nextArc = e + 1;
+                    inArc = found;
+                    return true;
+                }
+                count = blockSize;
+            }
+        }
+
+        if (found == -1) {
+            return false;
+        }
+        nextArc = e;
+        inArc = found;
+        return true;
+    }
+
+    private void findJoinNode() {
+        int u = source[inArc];
+        int v = target[inArc];
+        while (u != v) {
+            if (succNum[u] < succNum[v]) {
+                u = parent[u];
+            } else {
+                v = parent[v];
+            }
+        }
+        join = u;
+    }
+
+    // Finds the blocking arc of the cycle closed by the entering arc
+    private boolean findLeavingArc() {
+        int first;
+        int second;
+        if (state[inArc] == STATE_LOWER) {
+            first = source[inArc];
+            second = target[inArc];
+        } else {
+            first = target[inArc];
+            second = source[inArc];
+        }
+        delta = cap[inArc];
+        int result = 0;
+
+        for (int u = first; u != join; u = parent[u]) {
+            int e = pred[u];
+            double d = predDir[u] == DIR_DOWN ? cap[e] - flow[e] : flow[e];
+            if (d < delta) {
+                delta = d;
+                uOut = u;
+                result = 1;
+            }
+        }
+
+        for (int u = second; u != join; u = parent[u]) {
+            int e = pred[u];
+            double d = predDir[u] == DIR_UP ? cap[e] - flow[e] : flow[e];
+            if (d <= delta) {
+                delta = d;
+                uOut = u;
+                result = 2;
+            }
+        }
+
+        if (result == 1) {
+            uIn = first;
+            vIn = second;
+        } else {
+            uIn = second;
+            vIn = first;
+        }
+        return result != 0;
+    }
+
+    private void changeFlow(boolean change) {
+        if (delta > 0) {
+            double val = state[inArc] * delta;
+            flow[inArc] += val;
+            for (int u = source[inArc]; u != join; u = parent[u]) {
+                flow[pred[u]] -= predDir[u] * val;
+            }
+            for (int u = target[inArc]; u != join; u = parent[u]) {
+                flow[pred[u]] += predDir[u] * val;
+            }
+        }
+
+        if (change) {
+            state[inArc] = STATE_TREE;
+            int out = pred[uOut];
+            // Snap the leaving arc to whichever bound it reached
+            if (flow[out] <= cap[out] - flow[out]) {
+                flow[out] = 0;
+                state[out] = STATE_LOWER;
+            } else {
+                flow[out] = cap[out];
+                state[out] = STATE_UPPER;
+            }
+        } else {
+            state[inArc] = -state[inArc];
+        }
+    }
+
+    // Re-hangs the subtree cut off by the leaving arc under the entering arc
+    private void updateTreeStructure() {
+        int oldRevThread = revThread[uOut];
+        int oldSuccNum = succNum[uOut];
+        int oldLastSucc = lastSucc[uOut];
+        int vOut = parent[uOut];
+
+        if (uIn == uOut) {
+            parent[uIn] = vIn;
+            pred[uIn] = inArc;
+            predDir[uIn] = uIn == source[inArc] ? DIR_UP : DIR_DOWN;
+
+            if (thread[vIn] != uOut) {
+                int after = thread[oldLastSucc];
+                thread[oldRevThread] = after;
+                revThread[after] = oldRevThread;
+                after = thread[vIn];
+                thread[vIn] = uOut;
+                revThread[uOut] = vIn;
+                thread[oldLastSucc] = after;
+                revThread[after] = oldLastSucc;
+            }
+        } else {
+            int threadContinue = oldRevThread == vIn ? thread[oldLastSucc] : thread[vIn];
+
+            // Walk the stem from u_in to u_out, reversing parent links
+            int stem = uIn;
+            int parStem = vIn;
+            int last = lastSucc[uIn];
+            int after = thread[last];
+            thread[vIn] = uIn;
+            int dirtyCount = 0;
+            dirtyRevs[dirtyCount++] = vIn;
+            while (stem != uOut) {
+                int nextStem = parent[stem];
+                thread[last] = nextStem;
+                dirtyRevs[dirtyCount++] = last;
+
+                int before = revThread[stem];
+                thread[before] = after;
+                revThread[after] = before;
+
+                parent[stem] = parStem;
+                parStem = stem;
+                stem = nextStem;
+
+                last = lastSucc[stem] == lastSucc[parStem] ? revThread[parStem] : lastSucc[stem];
+                after = thread[last];
+            }
+            parent[uOut] = parStem;
+            thread[last] = threadContinue;
+            revThread[threadContinue] = last;
+            lastSucc[uOut] = last;
+
+            if (oldRevThread != vIn) {
+                thread[oldRevThread] = after;
+                revThread[after] = oldRevThread;
+            }
+
+            for (int i = 0; i < dirtyCount; i++) {
+                int u = dirtyRevs[i];
+                revThread[thread[u]] = u;
+            }
+
+            int tmpSc = 0;
+            int tmpLs = lastSucc[uOut];
+            for (int u = uOut, p = parent[u]; u != uIn; u = p, p = parent[u]) {
+                pred[u] = pred[p];
+                predDir[u] = -predDir[p];
+                tmpSc += succNum[u] - succNum[p];
+                succNum[u] = tmpSc;
+                lastSucc[p] = tmpLs;
+            }
+            pred[uIn] = inArc;
+            predDir[uIn] = uIn == source[inArc] ? DIR_UP : DIR_DOWN;
+            succNum[uIn] = oldSuccNum;
+        }
+
+        int upLimitOut = lastSucc[join] == vIn ? join : -1;
+        int lastSuccOut = lastSucc[uOut];
+        for (int u = vIn; u != -1 && lastSucc[u] == vIn; u = parent[u]) {
+            lastSucc[u] = lastSuccOut;
+        }
+
+        if (join != oldRevThread && vIn != oldRevThread) {
+            for (int u = vOut; u != upLimitOut && lastSucc[u] == oldLastSucc; u = parent[u]) {
+                lastSucc[u] = oldRevThread;
+            }
+        } else if (lastSuccOut != oldLastSucc) {
+            for (int u = vOut; u != upLimitOut && lastSucc[u] == oldLastSucc; u = parent[u]) {
+                lastSucc[u] = lastSuccOut;
+            }
+        }
+
+        for (int u = vIn; u != join; u = parent[u]) {
+            succNum[u] += oldSuccNum;
+        }
+        for (int u = vOut; u != join; u = parent[u]) {
+            succNum[u] -= oldSuccNum;
+        }
+    }
+
+    // Shifts potentials of the moved subtree so the entering arc has zero reduced cost
+    private void updatePotential() {
+        double sigma = pi[vIn] - pi[uIn] - predDir[uIn] * cost[inArc];
+        int end = thread[lastSucc[uIn]];
+        for (int u = uIn; u != end; u = thread[u]) {
+            pi[u] += sigma;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package cashflowoptimizer;
+
+/**
+ * How CashFlowOptimizer allocates revenue to expenses in each iteration.
+ */
+public enum OptimizationMode {
+    PAIRWISE,          // One min-cost flow solve per revenue/expense pair
+    PARALLEL_PAIRWISE, // Pairwise solves spread over a ForkJoin pool, same results as PAIRWISE;
+                       // runs as PAIRWISE for a bounded Q-table or the linear agent
+    SINGLE_PASS        // One multi-source/multi-sink solve through a super-source and super-sink
+}
@@ -0,0 +1,473 @@
+package cashflowoptimizer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local HTTP/JSON service in front of the solvers and the optimizer, built
+ * on the JDK's com.sun.net.httpserver.
+ *
+ * Endpoints:
+ * <pre>
+ *   POST /solve     {"nodes": [...], "edges": [...], "source": id, "sink": id, "solver": SolverType}
+ *                   -> {"flow": ..., "cost": ..., "transactions": [...]}
+ *   POST /optimize  {"nodes": [...], "edges": [...], "iterations": n, "mode": OptimizationMode,
+ *                    "solver": SolverType, "seed": n}
+ *                   -> {"totalCost": ..., "costHistory": [...], "transactions": [...]}
+ *   GET  /stats     Request, coalescing, rejection and solve cache counts and latency percentiles
+ * </pre>
+ * Nodes and edges use the financial_data.json layout.
+ *
+ * Requests are accepted on virtual threads when the JVM has them (Java 21
+ * and later) and on pooled platform threads otherwise, and computed on a
+ * fixed pool of "workers" threads. At most "workers" requests compute at a
+ * time and at most "queue" more wait for a turn; beyond that the server
+ * answers 503 straight away. A request whose path and body are identical to
+ * one already being computed waits for that result instead of computing it
+ * again, and does not count against the queue. Flow solves are memoised in
+ * a SolveCache shared by all requests, so a graph solved before is answered
+ * without solving it again. Every response carries its latency in a
+ * Server-Timing header.
+ */
+public class OptimizationServer {
+    private static final int MAX_BODY_BYTES = 64 << 20;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore admitted;
+    private final ExecutorService solvers;
+    private final ConcurrentHashMap<RequestKey, CompletableFuture<Response>> inFlight;
+    private final boolean virtualThreads;
+    private final SolveCache solveCache;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param address Address to listen on
+     * @param workers Requests computed at the same time
+     * @param queueCapacity Requests that may wait for a worker before new ones are rejected
+     */
+    public OptimizationServer(InetSocketAddress address, int workers, int queueCapacity) throws IOException {
+        if (workers <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Workers must be positive and the queue capacity not negative");
+        }
+        this.admitted = new Semaphore(workers + queueCapacity);
+        // Solves are CPU-bound, so they run on platform threads and request threads only wait for them
+        this.solvers = Executors.newFixedThreadPool(workers);
+        this.inFlight = new ConcurrentHashMap<>();
+        this.solveCache = new SolveCache();
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        // Admission is decided on the request's own thread, so the fallback pool must not queue
+        // requests itself; only admitted ones hold their thread for long
+        this.executor = virtual != null ? virtual : Executors.newCachedThreadPool();
+
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        for (String endpoint : new String[] {"/solve", "/optimize", "/stats"}) {
+            server.createContext(endpoint, exchange -> handle(exchange, endpoint));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                System.out.println("Unexpected argument: " + args[i]);
+                return;
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+        int workers = Integer.parseInt(options.getOrDefault("workers",
+                                                            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int queue = Integer.parseInt(options.getOrDefault("queue", "1024"));
+
+        OptimizationServer server = new OptimizationServer(new InetSocketAddress(host, port), workers, queue);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        System.out.printf("Serving on http://%s:%d with %d workers, queue %d, %s\n", host, server.getPort(), workers,
+                          queue, server.usesVirtualThreads() ? "virtual threads" : "platform threads");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to delaySeconds for running ones.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        solvers.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private void handle(HttpExchange exchange, String endpoint) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+        boolean post = !endpoint.equals("/stats");
+        Response response;
+        try {
+            if (!exchange.getRequestURI().getPath().equals(endpoint)) {
+                response = Response.error(404, "No such endpoint");
+            } else if (!exchange.getRequestMethod().equals(post ? "POST" : "GET")) {
+                response = Response.error(405, "Use " + (post ? "POST" : "GET"));
+            } else if (!post) {
+                response = stats();
+            } else {
+                response = solveOnce(exchange, endpoint);
+            }
+        } catch (IOException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            response = Response.error(500, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        }
+        if (response.status >= 500 && response.status != 503) {
+            failed.increment();
+        }
+
+        long nanos = System.nanoTime() - start;
+        latency.record(nanos);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Server-Timing",
+                                          String.format(Locale.ROOT, "total;dur=%.3f", nanos / 1e6));
+        exchange.sendResponseHeaders(response.status, response.body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response.body);
+        }
+    }
+
+    // Joins an identical request that is already computing, or computes the
+    // response if there is room in the queue. Joining takes no queue slot.
+    private Response solveOnce(HttpExchange exchange, String endpoint) throws IOException {
+        RequestKey key = new RequestKey(endpoint, readBody(exchange.getRequestBody()));
+        CompletableFuture<Response> running = inFlight.get(key);
+        if (running != null) {
+            return join(exchange, running);
+        }
+        if (!admitted.tryAcquire()) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            return Response.error(503, "Too many requests queued");
+        }
+
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        try {
+            running = inFlight.putIfAbsent(key, result);
+            if (running != null) {
+                return join(exchange, running);  // Lost the race to start it
+            }
+            solvers.execute(() -> {
+                try {
+                    result.complete(key.path.equals("/solve") ? solve(key.body) : optimize(key.body));
+                } catch (IOException | IllegalArgumentException e) {
+                    result.complete(Response.error(400, e.getMessage()));
+                } catch (RuntimeException | Error e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return await(result);
+        } finally {
+            inFlight.remove(key, result);
+            admitted.release();
+        }
+    }
+
+    private Response join(HttpExchange exchange, CompletableFuture<Response> running) {
+        coalesced.increment();
+        exchange.getResponseHeaders().set("X-Coalesced", "true");
+        return await(running);
+    }
+
+    private static Response await(CompletableFuture<Response> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.error(503, "Interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Response solve(byte[] body) throws IOException {
+        Graph graph = new Graph();
+        Map<String, String> options = readRequest(body, graph);
+        String source = options.get("source");
+        String sink = options.get("sink");
+        if (source == null || sink == null) {
+            throw new IllegalArgumentException("A solve needs a source and a sink");
+        }
+        if (graph.getNodeIndex(source) == -1 || graph.getNodeIndex(sink) == -1) {
+            throw new IllegalArgumentException("Unknown source or sink");
+        }
+        FlowSolver solver = SolverType.valueOf(options.getOrDefault("solver", "SUCCESSIVE_SHORTEST_PATH"))
+                                      .create(new ResidualWorkspace(graph), solveCache);
+        solver.computeMinCostMaxFlow(source, sink);
+
+        StringWriter text = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(text, 6)) {
+            writer.beginObject();
+            writer.name("flow").value(solver.getTotalFlow());
+            writer.name("cost").value(solver.getTotalCost());
+            writeTransactions(writer, solver.getTransactions());
+            writer.endObject();
+        }
+        return new Response(200, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Response optimize(byte[] body) throws IOException {
+        CashFlowOptimizer optimizer = new CashFlowOptimizer();
+        optimizer.setAutosave(false);
+        Map<String, String> options = readRequest(body, optimizer.getGraph());
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "10"));
+        if (iterations <= 0 || iterations > 10000) {
+            throw new IllegalArgumentException("Iterations must be between 1 and 10000");
+        }
+        optimizer.setOptimizationMode(OptimizationMode.valueOf(options.getOrDefault("mode", "PAIRWISE")));
+        optimizer.setSolverType(SolverType.valueOf(options.getOrDefault("solver", "SUCCESSIVE_SHORTEST_PATH")));
+        optimizer.setParallelism(1);
+        optimizer.setSolveCache(solveCache);
+        optimizer.setRandomSeed(Long.parseLong(options.getOrDefault("seed", "42")));
+        optimizer.optimize(iterations);
+        if (optimizer.getCostHistory().isEmpty()) {
+            throw new IllegalArgumentException("Needs at least one revenue and one expense node");
+        }
+
+        StringWriter text = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(text, 6)) {
+            writer.beginObject();
+            writer.name("totalCost").value(optimizer.getBestTotalCost());
+            writer.name("costHistory").beginArray();
+            for (double cost : optimizer.getCostHistory()) {
+                writer.value(cost);
+            }
+            writer.endArray();
+            writeTransactions(writer, optimizer.getBestTransactions());
+            writer.endObject();
+        }
+        return new Response(200, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Response stats() throws IOException {
+        StringWriter text = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(text, 3)) {
+            writer.beginObject();
+            writer.name("requests").value(requests.sum());
+            writer.name("coalesced").value(coalesced.sum());
+            writer.name("rejected").value(rejected.sum());
+            writer.name("failed").value(failed.sum());
+            writer.name("inFlight").value(inFlight.size());
+            writer.name("virtualThreads").value(virtualThreads);
+            writer.name("solveCache").beginObject();
+            writer.name("hits").value(solveCache.getHits());
+            writer.name("misses").value(solveCache.getMisses());
+            writer.name("evictions").value(solveCache.getEvictions());
+            writer.name("entries").value(solveCache.getSize());
+            writer.name("weightBytes").value(solveCache.getWeight());
+            writer.endObject();
+            writer.name("latencyMs").beginObject();
+            writer.name("mean").value(latency.mean() / 1e6);
+            writer.name("p50").value(latency.percentile(0.50) / 1e6);
+            writer.name("p90").value(latency.percentile(0.90) / 1e6);
+            writer.name("p99").value(latency.percentile(0.99) / 1e6);
+            writer.name("max").value(latency.max() / 1e6);
+            writer.endObject();
+            writer.endObject();
+        }
+        return new Response(200, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Loads the graph sections into graph and returns the other scalar members as text
+    private static Map<String, String> readRequest(byte[] body, Graph graph) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        FinancialDataFile.GraphLoader loader = new FinancialDataFile.GraphLoader(graph, new FinancialDataFile.Handler() { });
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (FinancialDataFile.readMember(name, reader, loader)) {
+                    continue;
+                }
+                switch (reader.peek()) {
+                    case STRING:
+                        options.put(name, reader.nextString());
+                        break;
+                    case NUMBER:
+                        double number = reader.nextDouble();
+                        options.put(name, number == Math.rint(number) ? String.valueOf((long) number) : String.valueOf(number));
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            reader.peek();  // Rejects anything after the document
+        }
+        loader.flush();
+        if (loader.getSkipped() > 0) {
+            throw new IOException(loader.getSkipped() + " edges refer to unknown nodes");
+        }
+        return options;
+    }
+
+    private static void writeTransactions(JsonWriter writer, List<TransactionRecord> transactions) throws IOException {
+        writer.name("transactions").beginArray();
+        for (TransactionRecord tr : transactions) {
+            writer.beginObject();
+            writer.name("source").value(tr.getSourceNode());
+            writer.name("destination").value(tr.getDestNode());
+            writer.name("amount").value(tr.getAmount());
+            writer.name("cost").value(tr.getCost());
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES) {
+                throw new IOException("Request body over " + (MAX_BODY_BYTES >> 20) + " MB");
+            }
+        }
+        return body.toByteArray();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor through reflection, so the code still builds for Java 8
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static class Response {
+        final int status;
+        final byte[] body;
+
+        Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response error(int status, String message) {
+            StringWriter text = new StringWriter();
+            try (JsonWriter writer = new JsonWriter(text, 0)) {
+                writer.beginObject();
+                writer.name("error").value(message == null ? "" : message);
+                writer.endObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new Response(status, text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Identity of a request for coalescing: the endpoint and the exact body bytes
+    private static class RequestKey {
+        final String path;
+        final byte[] body;
+        final int hash;
+
+        RequestKey(String path, byte[] body) {
+            this.path = path;
+            this.body = body;
+            this.hash = 31 * path.hashCode() + Arrays.hashCode(body);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RequestKey)) return false;
+            RequestKey other = (RequestKey) o;
+            return hash == other.hash && path.equals(other.path) && Arrays.equals(body, other.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // Lock-free latency histogram with power-of-two nanosecond buckets
+    private static class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+            count.increment();
+            total.add(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // Retry until the larger value sticks
+            }
+        }
+
+        double mean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) total.sum() / n;
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        // Upper bound of the bucket holding the given fraction of samples, capped at the maximum
+        long percentile(double fraction) {
+            long n = count.sum();
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (n > 0 && seen >= fraction * n) {
+                    return Math.min(max.get(), i >= 62 ? Long.MAX_VALUE : (2L << i) - 1);
+                }
+            }
+            return max.get();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package cashflowoptimizer;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trains an RLAgent's Q-values with several threads at once.
+ *
+ * Each worker runs whole episodes on its own ResidualWorkspace. An episode
+ * starts from the graph's balances and, step by step, picks a revenue/expense
+ * pair epsilon-greedily, solves it on the residual state left by the earlier
+ * steps, and learns from the cost. All workers update one StripedQTable
+ * without further coordination (Hogwild-style) and feed a shared
+ * ReplayBuffer, from which every step also replays a small batch.
+ *
+ * The agent's in-memory Q-values seed the shared table, and pairs missing
+ * from it fall back to the values the agent loaded from a file, so a load
+ * before training is built on rather than overridden. The learned values
+ * are written back to the agent when training ends. Results depend on
+ * thread timing, so runs with the same seed are not bit-identical.
+ */
+public class ParallelTrainer {
+    private final Graph graph;
+    private final RLAgent agent;
+    private SolverType solverType;
+    private StateDiscretizer stateDiscretizer;
+    private int threads;
+    private int stepsPerEpisode;
+    private int replayCapacity;
+    private int replayBatchSize;
+    private long seed;
+
+    private double[] episodeCosts;
+    private double episodesPerSecond;
+
+    // Shared training state
+    private List<Action> actionList;
+    private Map<Action, Integer> actionIds;
+    private ConcurrentHashMap<State, Integer> stateIds;
+    private List<State> stateList;
+    private volatile int[] savedStates;  // Index of each interned state in the agent's loaded table
+    private int[] savedActions;          // Id of each action in the agent's loaded table
+    private StripedQTable qValues;
+    private ReplayBuffer replay;
+
+    public ParallelTrainer(Graph graph, RLAgent agent) {
+        this.graph = graph;
+        this.agent = agent;
+        this.solverType = SolverType.SUCCESSIVE_SHORTEST_PATH;
+        this.stateDiscretizer = new StateDiscretizer();
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.stepsPerEpisode = 0;
+        this.replayCapacity = 1 << 16;
+        this.replayBatchSize = 4;
+        this.seed = System.nanoTime();
+    }
+
+    public void setSolverType(SolverType solverType) {
+        this.solverType = solverType;
+    }
+
+    public void setStateDiscretizer(StateDiscretizer stateDiscretizer) {
+        this.stateDiscretizer = stateDiscretizer;
+    }
+
+    public void setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param stepsPerEpisode Actions per episode; 0 means one per revenue/expense pair
+     */
+    public void setStepsPerEpisode(int stepsPerEpisode) {
+        this.stepsPerEpisode = stepsPerEpisode;
+    }
+
+    public void setReplayCapacity(int replayCapacity) {
+        this.replayCapacity = replayCapacity;
+    }
+
+    public void setReplayBatchSize(int replayBatchSize) {
+        this.replayBatchSize = replayBatchSize;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return Total flow cost of each episode of the last train call
+     */
+    public double[] getEpisodeCosts() {
+        return episodeCosts;
+    }
+
+    public double getEpisodesPerSecond() {
+        return episodesPerSecond;
+    }
+
+    /**
+     * Runs the given number of episodes and stores the learned Q-values in
+     * the agent. The exploration rate decays per episode as in optimize.
+     */
+    public void train(int episodes) {
+        actionList = new ArrayList<>();
+        actionIds = new HashMap<>();
+        for (String revenueId : graph.getNodeIds()) {
+            if (graph.getNodeType(revenueId) != NodeType.REVENUE) continue;
+            for (String expenseId : graph.getNodeIds()) {
+                if (graph.getNodeType(expenseId) != NodeType.EXPENSE) continue;
+                Action action = new Action(revenueId, expenseId);
+                actionIds.put(action, actionList.size());
+                actionList.add(action);
+            }
+        }
+        if (episodes <= 0 || actionList.isEmpty()) {
+            Log.warn("Need at least one episode and one revenue/expense pair to train.");
+            return;
+        }
+
+        stateIds = new ConcurrentHashMap<>();
+        stateList = new ArrayList<>();
+        savedStates = new int[64];
+        savedActions = new int[actionList.size()];
+        for (int actionId = 0; actionId < savedActions.length; actionId++) {
+            savedActions[actionId] = agent.findSavedAction(actionList.get(actionId));
+        }
+        qValues = new StripedQTable(threads * 8);
+        replay = new ReplayBuffer(replayCapacity);
+        agent.forEachQValue((state, action, value) -> {
+            Integer actionId = actionIds.get(action);
+            if (actionId != null) {
+                qValues.put(QTable.key(internState(state), actionId), value);
+            }
+        });
+
+        // Freeze once up front so workers only read the shared topology
+        graph.freeze();
+        episodeCosts = new double[episodes];
+        AtomicInteger nextEpisode = new AtomicInteger();
+        double initialExploration = agent.getExplorationRate();
+        int steps = stepsPerEpisode > 0 ? stepsPerEpisode : actionList.size();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(() -> runWorker(nextEpisode, episodes, steps, initialExploration)));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training worker failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        episodesPerSecond = episodes / ((System.nanoTime() - start) / 1e9);
+
+        qValues.forEach((key, value) ->
+                agent.setQValue(stateList.get((int) (key >>> 32)), actionList.get((int) key), value));
+        agent.setExplorationRate(explorationFor(initialExploration, episodes));
+    }
+
+    private void runWorker(AtomicInteger nextEpisode, int episodes, int steps, double initialExploration) {
+        ResidualWorkspace workspace = new ResidualWorkspace(graph);
+        FlowSolver solver = solverType.create(workspace);
+        ReplayBuffer.Transition transition = new ReplayBuffer.Transition();
+
+        int episode;
+        while ((episode = nextEpisode.getAndIncrement()) < episodes) {
+            Random random = new Random(seed * 31 + episode);
+            double explorationRate = explorationFor(initialExploration, episode);
+            workspace.reset();
+
+            int stateId = internState(State.of(workspace, stateDiscretizer));
+            double episodeCost = 0;
+            for (int step = 0; step < steps; step++) {
+                int actionId = selectAction(stateId, explorationRate, random);
+                Action action = actionList.get(actionId);
+                solver.computeMinCostMaxFlow(action.getSourceNodeId(), action.getSinkNodeId());
+                double cost = solver.getTotalCost();
+                episodeCost += cost;
+
+                int nextStateId = internState(State.of(workspace, stateDiscretizer));
+                update(stateId, actionId, -cost, nextStateId);
+                replay.add(stateId, actionId, -cost, nextStateId);
+                for (int i = 0; i < replayBatchSize; i++) {
+                    if (replay.sample(random, transition)) {
+                        update(transition.stateId, transition.actionId, transition.reward, transition.nextStateId);
+                    }
+                }
+                stateId = nextStateId;
+            }
+            episodeCosts[episode] = episodeCost;
+        }
+    }
+
+    private int selectAction(int stateId, double explorationRate, Random random) {
+        if (random.nextDouble() < explorationRate) {
+            return random.nextInt(actionList.size());
+        }
+        int best = 0;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int ties = 0;
+        for (int actionId = 0; actionId < actionList.size(); actionId++) {
+            double value = qValue(stateId, actionId);
+            if (value > bestValue) {
+                bestValue = value;
+                best = actionId;
+                ties = 1;
+            } else if (value == bestValue && random.nextInt(++ties) == 0) {
+                best = actionId;  // Reservoir sampling breaks ties uniformly
+            }
+        }
+        return best;
+    }
+
+    private void update(int stateId, int actionId, double reward, int nextStateId) {
+        double maxNextQ = 0.0;
+        for (int nextAction = 0; nextAction < actionList.size(); nextAction++) {
+            maxNextQ = Math.max(maxNextQ, qValue(nextStateId, nextAction));
+        }
+        long key = QTable.key(stateId, actionId);
+        double currentQ = qValue(stateId, actionId);
+        qValues.put(key, currentQ + agent.getLearningRate() * (reward + agent.getDiscountFactor() * maxNextQ - currentQ));
+    }
+
+    // Shared value, else the agent's loaded value, else 0
+    private double qValue(int stateId, int actionId) {
+        double value = qValues.get(QTable.key(stateId, actionId), Double.NaN);
+        if (!Double.isNaN(value)) {
+            return value;
+        }
+        int savedState = savedStates[stateId];
+        return savedState == -1 ? 0.0 : agent.getSavedQValue(savedState, savedActions[actionId]);
+    }
+
+    private int internState(State state) {
+        Integer id = stateIds.get(state);
+        if (id != null) {
+            return id;
+        }
+        return stateIds.computeIfAbsent(state, s -> {
+            synchronized (stateList) {
+                int newId = stateList.size();
+                stateList.add(s);
+                // Published before the id is, through the volatile write
+                int[] saved = newId < savedStates.length ? savedStates : Arrays.copyOf(savedStates, newId * 2);
+                saved[newId] = agent.findSavedState(s);
+                savedStates = saved;
+                return newId;
+            }
+        });
+    }
+
+    private static double explorationFor(double initialExploration, int episode) {
+        return Math.max(0.01, initialExploration * Math.pow(0.95, episode));
+    }
+}
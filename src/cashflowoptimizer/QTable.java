@@ -0,0 +1,300 @@
+package cashflowoptimizer;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from a (state id, action id) pair packed into a
+ * long to a Q-value. Keys and values live in two primitive arrays with linear
+ * probing, so lookups and updates never allocate or box.
+ *
+ * A bounded table has a fixed capacity and an EvictionPolicy. Inserting a new
+ * key into a full table first evicts the entry the policy scores lowest among
+ * a random sample of entries, as Redis does for its approximated LRU and LFU.
+ * Hit, miss and eviction counters are kept in both modes.
+ */
+public class QTable {
+    private static final long EMPTY = -1L;  // Never produced by key(), ids are non-negative
+    private static final double MAX_LOAD = 0.75;
+    private static final int EVICTION_SAMPLES = 8;
+    private static final int MAX_BOUNDED_ENTRIES = (int) ((1 << 30) * MAX_LOAD);
+
+    private long[] keys;
+    private double[] values;
+    private int size;
+    private int mask;
+
+    // Eviction bookkeeping, only allocated for bounded tables
+    private final EvictionPolicy policy;
+    private final int maxEntries;
+    private long[] lastAccess;
+    private int[] visits;
+    private long clock;
+    private long randomState;
+    private EvictionListener evictionListener;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public QTable() {
+        this(16);
+    }
+
+    public QTable(int expectedSize) {
+        this.policy = null;
+        this.maxEntries = Integer.MAX_VALUE;
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Creates a table that holds at most maxEntries Q-values.
+     * @param maxEntries Entry budget
+     * @param policy Decides which entry makes room for a new one
+     */
+    public QTable(int maxEntries, EvictionPolicy policy) {
+        if (maxEntries <= 0 || maxEntries > MAX_BOUNDED_ENTRIES) {
+            throw new IllegalArgumentException("Entry budget must be between 1 and " + MAX_BOUNDED_ENTRIES);
+        }
+        this.policy = policy;
+        this.maxEntries = maxEntries;
+        this.randomState = 0x9E3779B97F4A7C15L;
+        allocate(capacityFor(maxEntries));
+    }
+
+    /**
+     * Creates a bounded table whose arrays fit in the given number of bytes.
+     * @param bytes Memory budget for keys, values and eviction bookkeeping
+     * @param policy Decides which entry makes room for a new one
+     */
+    public static QTable withByteBudget(long bytes, EvictionPolicy policy) {
+        long capacity = Long.highestOneBit(Math.max(16, bytes / bytesPerSlot()));
+        return new QTable((int) Math.min(MAX_BOUNDED_ENTRIES, (long) (capacity * MAX_LOAD)), policy);
+    }
+
+    /**
+     * @return Bytes used per slot of a bounded table
+     */
+    public static int bytesPerSlot() {
+        return 8 + 8 + 8 + 4;
+    }
+
+    /**
+     * Packs a state id and an action id into one key.
+     */
+    public static long key(int stateId, int actionId) {
+        return ((long) stateId << 32) | (actionId & 0xFFFFFFFFL);
+    }
+
+    public double get(long key, double defaultValue) {
+        int slot = indexOf(key);
+        if (keys[slot] == EMPTY) {
+            misses++;
+            return defaultValue;
+        }
+        hits++;
+        touch(slot);
+        return values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return keys[indexOf(key)] != EMPTY;
+    }
+
+    /**
+     * Stores a value, evicting another entry first if the table is full.
+     * @return true if the key was not in the table before
+     */
+    public boolean put(long key, double value) {
+        int slot = indexOf(key);
+        if (keys[slot] != EMPTY) {
+            values[slot] = value;
+            touch(slot);
+            return false;
+        }
+
+        if (size >= maxEntries) {
+            evictOne();
+            slot = indexOf(key);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (policy != null) {
+            lastAccess[slot] = ++clock;
+            visits[slot] = 1;
+        } else if (size > keys.length * MAX_LOAD) {
+            resize(keys.length << 1);
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The entry budget, or Integer.MAX_VALUE for an unbounded table
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public void setEvictionListener(EvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Calls the consumer for every entry, in table order.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    // Slot holding the key, or the empty slot where it would go
+    private int indexOf(long key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void touch(int slot) {
+        if (policy != null) {
+            lastAccess[slot] = ++clock;
+            if (visits[slot] < Integer.MAX_VALUE) {
+                visits[slot]++;
+            }
+        }
+    }
+
+    private void evictOne() {
+        int victim = -1;
+        double victimScore = Double.MAX_VALUE;
+        for (int i = 0; i < EVICTION_SAMPLES; i++) {
+            int slot = randomOccupiedSlot();
+            double score = policy.score(lastAccess[slot], visits[slot], values[slot]);
+            if (victim == -1 || score < victimScore) {
+                victim = slot;
+                victimScore = score;
+            }
+        }
+
+        long key = keys[victim];
+        double value = values[victim];
+        removeAt(victim);
+        evictions++;
+        if (evictionListener != null) {
+            evictionListener.evicted(key, value);
+        }
+    }
+
+    private int randomOccupiedSlot() {
+        while (true) {
+            // xorshift64
+            randomState ^= randomState << 13;
+            randomState ^= randomState >>> 7;
+            randomState ^= randomState << 17;
+            int slot = (int) randomState & mask;
+            if (keys[slot] != EMPTY) {
+                return slot;
+            }
+        }
+    }
+
+    // Backward-shift deletion keeps every probe chain unbroken without tombstones
+    private void removeAt(int slot) {
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                lastAccess[hole] = lastAccess[next];
+                visits[hole] = visits[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = indexOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new double[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        if (policy != null) {
+            lastAccess = new long[capacity];
+            visits = new int[capacity];
+        }
+    }
+
+    private static int capacityFor(int entries) {
+        return Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 30, (long) (entries / MAX_LOAD))) - 1) << 1;
+    }
+
+    // Murmur3 finaliser, spreads sequential ids over the table
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public interface EntryConsumer {
+        void accept(long key, double value);
+    }
+
+    public interface EvictionListener {
+        void evicted(long key, double value);
+    }
+}
@@ -1,9 +1,15 @@
 package cashflowoptimizer;
 
+import java.io.IOException;
+import java.nio.file.*;
 import java.util.*;
 
-public class RLAgent {
-    private Map<String, Double> qValues;  // State-action Q-values
+public class RLAgent implements Agent {
+    private QTable qValues;  // State-action Q-values, keyed by interned ids
+    private IdInterner<State> states;
+    private IdInterner<Action> actions;
+    private MappedQTable savedValues;  // Table from the last load; in-memory values take precedence
+    private int[] stateEntries;  // Q-values held per state id, so evicted states can be forgotten
     private double learningRate;
     private double discountFactor;
     private double explorationRate;
@@ -12,29 +18,42 @@ public class RLAgent {
     private boolean verbose = false; // Toggle for logging
 
     public RLAgent(double learningRate, double discountFactor, double explorationRate) {
-        this.qValues = new HashMap<>();
+        this.qValues = new QTable();
+        this.states = new IdInterner<>();
+        this.actions = new IdInterner<>();
+        this.stateEntries = new int[16];
         this.learningRate = learningRate;
         this.discountFactor = discountFactor;
         this.explorationRate = explorationRate;
         this.random = new Random();
     }
 
+    /**
+     * Creates an agent whose exploration is reproducible for a given seed.
+     */
+    public RLAgent(double learningRate, double discountFactor, double explorationRate, long seed) {
+        this(learningRate, discountFactor, explorationRate);
+        this.random = new Random(seed);
+    }
+
     // Epsilon-greedy strategy
+    @Override
     public Action selectAction(State state, List<Action> possibleActions) {
         if (possibleActions.isEmpty()) return null;
 
         if (random.nextDouble() < explorationRate) {
             Action chosen = possibleActions.get(random.nextInt(possibleActions.size()));
-            if (verbose) System.out.println("[Explore] Chose random action: " + chosen);
+            if (verbose) Log.info(() -> "[Explore] Chose random action: " + chosen);
             return chosen;
         }
 
         double bestValue = Double.NEGATIVE_INFINITY;
         List<Action> bestActions = new ArrayList<>();
+        int stateId = states.find(state);
+        int savedStateIndex = findSavedState(state);
 
         for (Action action : possibleActions) {
-            String key = getStateActionKey(state, action);
-            double value = qValues.getOrDefault(key, 0.0);
+            double value = getQValue(stateId, savedStateIndex, action);
 
             if (value > bestValue) {
                 bestValue = value;
@@ -48,31 +67,39 @@ public class RLAgent {
         Action chosen = bestActions.isEmpty() ? possibleActions.get(0) :
                         bestActions.get(random.nextInt(bestActions.size()));
 
-        if (verbose) System.out.printf("[Exploit] Chose best action: %s (Q=%.2f)\n", chosen, bestValue);
+        if (verbose) {
+            double chosenValue = bestValue;
+            Log.info(() -> String.format("[Exploit] Chose best action: %s (Q=%.2f)", chosen, chosenValue));
+        }
         return chosen;
     }
     
 
     // Q-learning update
+    @Override
     public void updateQValue(State state, Action action, double reward, State nextState, List<Action> nextActions) {
-        String key = getStateActionKey(state, action);
-        double currentQ = qValues.getOrDefault(key, 0.0);
+        double currentQ = getQValue(states.find(state), findSavedState(state), action);
+        int stateId = states.intern(state);
+        long key = QTable.key(stateId, actions.intern(action));
 
         double maxNextQ = 0.0;
+        int nextStateId = states.find(nextState);
+        int savedNextStateIndex = findSavedState(nextState);
         for (Action nextAction : nextActions) {
-            String nextKey = getStateActionKey(nextState, nextAction);
-            maxNextQ = Math.max(maxNextQ, qValues.getOrDefault(nextKey, 0.0));
+            maxNextQ = Math.max(maxNextQ, getQValue(nextStateId, savedNextStateIndex, nextAction));
         }
 
         double updatedQ = currentQ + learningRate * (reward + discountFactor * maxNextQ - currentQ);
-        qValues.put(key, updatedQ);
+        storeQValue(stateId, key, updatedQ);
 
         if (verbose) {
-            System.out.printf("Q-Update: [%s] %.4f -> %.4f (reward=%.2f, maxNextQ=%.2f)\n",
-                              key, currentQ, updatedQ, reward, maxNextQ);
+            double bestNextQ = maxNextQ;
+            Log.info(() -> String.format("Q-Update: [%s|%s] %.4f -> %.4f (reward=%.2f, maxNextQ=%.2f)",
+                                         state, action, currentQ, updatedQ, reward, bestNextQ));
         }
     }
 
+    @Override
     public void decreaseExplorationRate(double factor) {
         explorationRate *= factor;
         if (explorationRate < 0.01) {
@@ -80,31 +107,208 @@ public class RLAgent {
         }
     }
 
+    @Override
     public void setExplorationRate(double rate) {
         this.explorationRate = rate;
     }
 
+    @Override
     public double getExplorationRate() {
         return explorationRate;
     }
 
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    public double getDiscountFactor() {
+        return discountFactor;
+    }
+
+    /**
+     * Overwrites the Q-value of a state-action pair, e.g. with one learned
+     * by a ParallelTrainer.
+     */
+    public void setQValue(State state, Action action, double value) {
+        int stateId = states.intern(state);
+        storeQValue(stateId, QTable.key(stateId, actions.intern(action)), value);
+    }
+
+    /**
+     * Calls the consumer for every in-memory Q-value.
+     */
+    void forEachQValue(QValueConsumer consumer) {
+        qValues.forEach((key, value) ->
+                consumer.accept(states.get((int) (key >>> 32)), actions.get((int) key), value));
+    }
+
+    interface QValueConsumer {
+        void accept(State state, Action action, double value);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Bounds the Q-table to a number of entries. Existing values are kept as
+     * far as the budget allows.
+     * @param maxEntries Entry budget
+     * @param policy EvictionPolicy.LRU, LFU, LOWEST_VALUE_VISITS or a custom policy
+     */
+    public void setQTableBudget(int maxEntries, EvictionPolicy policy) {
+        replaceQTable(new QTable(maxEntries, policy));
+    }
+
+    /**
+     * Bounds the Q-table to a memory budget. Existing values are kept as far
+     * as the budget allows.
+     * @param bytes Memory budget for the table's arrays
+     * @param policy EvictionPolicy.LRU, LFU, LOWEST_VALUE_VISITS or a custom policy
+     */
+    public void setQTableByteBudget(long bytes, EvictionPolicy policy) {
+        replaceQTable(QTable.withByteBudget(bytes, policy));
+    }
+
+    /**
+     * Gets the in-memory Q-table, e.g. to read its hit, miss and eviction counters
+     * @return The Q-table
+     */
+    public QTable getQTable() {
+        return qValues;
+    }
+
+    @Override
     public boolean hasImproved() {
-        return !qValues.isEmpty();
+        return !qValues.isEmpty() || (savedValues != null && savedValues.getEntryCount() > 0);
     }
 
     public void setVerbose(boolean verbose) {
         this.verbose = verbose;
     }
 
-    private String getStateActionKey(State state, Action action) {
-        return state.toString() + "|" + action.toString();
+    // Unseen states and actions fall back to the loaded table, then to 0, without being interned
+    private double getQValue(int stateId, int savedStateIndex, Action action) {
+        if (stateId != -1) {
+            int actionId = actions.find(action);
+            if (actionId != -1) {
+                double value = qValues.get(QTable.key(stateId, actionId), Double.NaN);
+                if (!Double.isNaN(value)) {
+                    return value;
+                }
+            }
+        }
+        if (savedStateIndex != -1) {
+            return savedValues.get(savedStateIndex, savedValues.findAction(action), 0.0);
+        }
+        return 0.0;
+    }
+
+    // The state's count is raised before the put, so an eviction during the
+    // put cannot release the id that is being written
+    private void storeQValue(int stateId, long key, double value) {
+        if (stateId >= stateEntries.length) {
+            stateEntries = Arrays.copyOf(stateEntries, Math.max(stateId + 1, stateEntries.length * 2));
+        }
+        stateEntries[stateId]++;
+        if (!qValues.put(key, value)) {
+            stateEntries[stateId]--;
+        }
+    }
+
+    private void onEvicted(long key, double value) {
+        int stateId = (int) (key >>> 32);
+        if (--stateEntries[stateId] == 0) {
+            states.release(stateId);
+        }
+    }
+
+    private void replaceQTable(QTable table) {
+        QTable old = qValues;
+        Arrays.fill(stateEntries, 0);
+        old.forEach((key, value) -> stateEntries[(int) (key >>> 32)]++);
+
+        // Entries not yet moved are still counted, so no state is released early
+        qValues = table;
+        table.setEvictionListener(this::onEvicted);
+        old.forEach((key, value) -> table.put(key, value));
+    }
+
+    // Index of the state in the table from the last load, or -1
+    int findSavedState(State state) {
+        return savedValues == null ? -1 : savedValues.findState(state.getFingerprint());
+    }
+
+    // Id of the action in the table from the last load, or -1
+    int findSavedAction(Action action) {
+        return savedValues == null ? -1 : savedValues.findAction(action);
     }
 
+    // Loaded Q-value by index and id from findSavedState and findSavedAction; safe from any thread
+    double getSavedQValue(int savedStateIndex, int savedActionId) {
+        return savedValues == null ? 0.0 : savedValues.get(savedStateIndex, savedActionId, 0.0);
+    }
+
+    /**
+     * Writes the Q-values, including any loaded ones not updated since, to a
+     * binary file. The file is replaced atomically.
+     */
+    @Override
     public void save(String path) {
-        System.out.println("Saving Q-values to: " + path + " [Not implemented]");
+        List<Action> dictionary = new ArrayList<>();
+        Map<Action, Integer> dictionaryIds = new HashMap<>();
+        if (savedValues != null) {
+            for (int id = 0; id < savedValues.getActionCount(); id++) {
+                dictionary.add(savedValues.getAction(id));
+                dictionaryIds.put(savedValues.getAction(id), id);
+            }
+        }
+
+        int count = qValues.size();
+        long[] fingerprints = new long[count];
+        int[] entryActions = new int[count];
+        double[] entryValues = new double[count];
+        int[] index = new int[1];
+        qValues.forEach((key, value) -> {
+            Action action = actions.get((int) key);
+            Integer actionId = dictionaryIds.get(action);
+            if (actionId == null) {
+                actionId = dictionary.size();
+                dictionary.add(action);
+                dictionaryIds.put(action, actionId);
+            }
+            fingerprints[index[0]] = states.get((int) (key >>> 32)).getFingerprint();
+            entryActions[index[0]] = actionId;
+            entryValues[index[0]] = value;
+            index[0]++;
+        });
+
+        try {
+            MappedQTable.write(Paths.get(path), dictionary, fingerprints, entryActions, entryValues, count, savedValues);
+            System.out.println("Q-values saved to: " + path);
+        } catch (IOException e) {
+            System.out.println("Error saving Q-values: " + e.getMessage());
+        }
     }
 
+    /**
+     * Replaces the Q-values with the ones in a file written by save. The
+     * file is memory-mapped and read lazily as states are looked up.
+     */
+    @Override
     public void load(String path) {
-        System.out.println("Loading Q-values from: " + path + " [Not implemented]");
+        try {
+            savedValues = MappedQTable.open(Paths.get(path));
+            qValues.clear();
+            Arrays.fill(stateEntries, 0);
+            states = new IdInterner<>();
+            actions = new IdInterner<>();
+            System.out.println("Loaded Q-values for " + savedValues.getStateCount() + " states from: " + path);
+        } catch (NoSuchFileException e) {
+            System.out.println("No Q-value file found at: " + path);
+        } catch (IOException e) {
+            System.out.println("Error loading Q-values: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,134 @@
+package cashflowoptimizer;
+
+import java.util.Arrays;
+
+/**
+ * Monotone radix heap for integer keys. Each node sits in an intrusive
+ * doubly linked bucket list, so decrease-key is O(1) and nothing is
+ * allocated after reset. Keys must be non-negative whole numbers and may
+ * never drop below the last popped key. In MinCostMaxFlow that holds for
+ * integer costs on reduced costs from integer potentials, so the solver
+ * always uses potentials with this queue; plain costs fail as soon as a
+ * reverse arc with a negative cost is relaxed.
+ */
+public class RadixHeapQueue implements ShortestPathQueue {
+    private static final int BUCKETS = 65;
+
+    private final int[] bucketHead;
+    private int[] next;
+    private int[] prev;
+    private int[] bucketOf;
+    private long[] keys;
+    private long last;
+    private int size;
+
+    @Override
+    public boolean isMonotone() {
+        return true;
+    }
+
+    public RadixHeapQueue() {
+        bucketHead = new int[BUCKETS];
+        next = new int[0];
+        prev = new int[0];
+        bucketOf = new int[0];
+        keys = new long[0];
+    }
+
+    @Override
+    public void reset(int nodeCount) {
+        if (bucketOf.length < nodeCount) {
+            next = new int[nodeCount];
+            prev = new int[nodeCount];
+            bucketOf = new int[nodeCount];
+            keys = new long[nodeCount];
+        }
+        Arrays.fill(bucketHead, -1);
+        Arrays.fill(bucketOf, -1);
+        last = 0;
+        size = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void push(int node, double key) {
+        if (key < 0 || key != Math.floor(key)) {
+            throw new IllegalArgumentException("RadixHeapQueue requires non-negative integer keys, got " + key);
+        }
+        long longKey = (long) key;
+        if (longKey < last) {
+            throw new IllegalStateException("RadixHeapQueue keys must be monotone: " + longKey + " < " + last);
+        }
+
+        if (bucketOf[node] != -1) {
+            if (longKey >= keys[node]) return;
+            unlink(node);
+        } else {
+            size++;
+        }
+        keys[node] = longKey;
+        link(node, bucketIndex(longKey));
+    }
+
+    @Override
+    public int pop() {
+        if (bucketHead[0] == -1) {
+            int bucket = 1;
+            while (bucketHead[bucket] == -1) {
+                bucket++;
+            }
+
+            long min = Long.MAX_VALUE;
+            for (int node = bucketHead[bucket]; node != -1; node = next[node]) {
+                min = Math.min(min, keys[node]);
+            }
+            last = min;
+
+            // Every node in this bucket now lands in a strictly lower one
+            int node = bucketHead[bucket];
+            bucketHead[bucket] = -1;
+            while (node != -1) {
+                int following = next[node];
+                link(node, bucketIndex(keys[node]));
+                node = following;
+            }
+        }
+
+        int top = bucketHead[0];
+        unlink(top);
+        size--;
+        return top;
+    }
+
+    private int bucketIndex(long key) {
+        return key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last);
+    }
+
+    private void link(int node, int bucket) {
+        int head = bucketHead[bucket];
+        next[node] = head;
+        prev[node] = -1;
+        if (head != -1) {
+            prev[head] = node;
+        }
+        bucketHead[bucket] = node;
+        bucketOf[node] = bucket;
+    }
+
+    private void unlink(int node) {
+        int bucket = bucketOf[node];
+        if (prev[node] != -1) {
+            next[prev[node]] = next[node];
+        } else {
+            bucketHead[bucket] = next[node];
+        }
+        if (next[node] != -1) {
+            prev[next[node]] = prev[node];
+        }
+        bucketOf[node] = -1;
+    }
+}
@@ -0,0 +1,85 @@
+package cashflowoptimizer;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size experience replay ring shared by training threads. Each
+ * transition (state id, action id, reward, next state id) is packed into three
+ * longs, so adding and sampling never allocate. Writers claim slots with one
+ * atomic increment and overwrite the oldest transitions once the ring is full.
+ * A per-slot sequence number works like a seqlock: a sample that overlaps a
+ * write is rejected instead of returning a torn transition.
+ */
+public class ReplayBuffer {
+    private final int capacity;
+    private final AtomicLongArray data;
+    private final AtomicLongArray sequence;
+    private final AtomicLong cursor;
+
+    public ReplayBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Replay capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.data = new AtomicLongArray(capacity * 3);
+        this.sequence = new AtomicLongArray(capacity);
+        this.cursor = new AtomicLong();
+    }
+
+    public void add(int stateId, int actionId, double reward, int nextStateId) {
+        long ticket = cursor.getAndIncrement();
+        int slot = (int) (ticket % capacity);
+        sequence.set(slot, 2 * ticket + 1);  // Odd while the slot is being written
+        data.set(slot * 3, QTable.key(stateId, actionId));
+        data.set(slot * 3 + 1, Double.doubleToRawLongBits(reward));
+        data.set(slot * 3 + 2, nextStateId);
+        sequence.set(slot, 2 * ticket + 2);
+    }
+
+    /**
+     * Copies a uniformly chosen stored transition into out.
+     * @return false if the buffer is empty or the chosen slot was being written
+     */
+    public boolean sample(Random random, Transition out) {
+        long written = cursor.get();
+        if (written == 0) {
+            return false;
+        }
+        int slot = random.nextInt((int) Math.min(written, capacity));
+        long before = sequence.get(slot);
+        if (before == 0 || (before & 1) != 0) {
+            return false;
+        }
+        long key = data.get(slot * 3);
+        long reward = data.get(slot * 3 + 1);
+        long nextState = data.get(slot * 3 + 2);
+        if (sequence.get(slot) != before) {
+            return false;
+        }
+        out.stateId = (int) (key >>> 32);
+        out.actionId = (int) key;
+        out.reward = Double.longBitsToDouble(reward);
+        out.nextStateId = (int) nextState;
+        return true;
+    }
+
+    public int size() {
+        return (int) Math.min(cursor.get(), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Reusable holder for a sampled transition.
+     */
+    public static class Transition {
+        public int stateId;
+        public int actionId;
+        public double reward;
+        public int nextStateId;
+    }
+}
@@ -0,0 +1,180 @@
+package cashflowoptimizer;
+
+import java.util.Arrays;
+
+/**
+ * Mutable flow and balance state over a shared, immutable CsrGraph.
+ *
+ * Solvers write arc flows and node balances here instead of into the graph,
+ * and every write is recorded in an undo log. reset() walks that log, so
+ * returning to the base state costs O(touched edges and nodes) rather than
+ * the O(graph) of Graph.copy(). Any number of workspaces can share one
+ * topology, e.g. one per simulation thread.
+ */
+public class ResidualWorkspace {
+    private final Graph graph;
+    private final CsrGraph network;
+    private final double[] flow;
+    private final double[] balance;
+    private final double[] baseBalance;
+    private final long edgeFingerprint;
+    private long baseFingerprint;
+
+    // Undo log of touched edges and nodes since the last reset
+    private final boolean[] edgeTouched;
+    private final int[] touchedEdges;
+    private int touchedEdgeCount;
+    private final boolean[] nodeTouched;
+    private final int[] touchedNodes;
+    private int touchedNodeCount;
+
+    /**
+     * Creates a workspace over the graph's frozen topology with zero flow and
+     * the graph's current balances as the base state.
+     * @param graph The graph whose topology and balances to use
+     */
+    public ResidualWorkspace(Graph graph) {
+        this.graph = graph;
+        this.network = graph.freeze();
+        this.edgeFingerprint = graph.getEdgeFingerprint();
+        int n = network.getNodeCount();
+        this.flow = new double[network.getArcCount()];
+        this.balance = new double[n];
+        this.baseBalance = new double[n];
+        this.edgeTouched = new boolean[network.getEdgeCount()];
+        this.touchedEdges = new int[network.getEdgeCount()];
+        this.nodeTouched = new boolean[n];
+        this.touchedNodes = new int[n];
+        rebase();
+    }
+
+    public Graph getGraph() {
+        return graph;
+    }
+
+    public CsrGraph getNetwork() {
+        return network;
+    }
+
+    /**
+     * Fingerprint of the problem this workspace solves from its base state:
+     * the edges as they were when the workspace was created and the node
+     * balances as of the last rebase.
+     */
+    public long getFingerprint() {
+        return baseFingerprint;
+    }
+
+    /**
+     * @return true if nothing has changed since the last reset
+     */
+    public boolean isAtBase() {
+        return touchedEdgeCount == 0 && touchedNodeCount == 0;
+    }
+
+    public double getFlow(int arc) {
+        return flow[arc];
+    }
+
+    public double getResidualCapacity(int arc) {
+        return network.getCapacity(arc) - flow[arc];
+    }
+
+    public void addFlow(int arc, double additionalFlow) {
+        touchEdge(network.getEdge(arc));
+        flow[arc] += additionalFlow;
+        flow[network.getReverse(arc)] -= additionalFlow;
+    }
+
+    public double getBalance(int node) {
+        return balance[node];
+    }
+
+    public void setBalance(int node, double value) {
+        touchNode(node);
+        balance[node] = value;
+    }
+
+    public void addBalance(int node, double amount) {
+        touchNode(node);
+        balance[node] += amount;
+    }
+
+    /**
+     * Undoes every flow and balance change since the last reset.
+     */
+    public void reset() {
+        for (int i = 0; i < touchedEdgeCount; i++) {
+            int edge = touchedEdges[i];
+            int arc = network.getForwardArc(edge);
+            flow[arc] = 0;
+            flow[network.getReverse(arc)] = 0;
+            edgeTouched[edge] = false;
+        }
+        touchedEdgeCount = 0;
+
+        for (int i = 0; i < touchedNodeCount; i++) {
+            int node = touchedNodes[i];
+            balance[node] = baseBalance[node];
+            nodeTouched[node] = false;
+        }
+        touchedNodeCount = 0;
+    }
+
+    /**
+     * Clears all flow and reloads the base balances from the graph. Call this
+     * after the graph's balances have changed outside the workspace.
+     */
+    public void rebase() {
+        Arrays.fill(flow, 0);
+        Arrays.fill(edgeTouched, false);
+        Arrays.fill(nodeTouched, false);
+        touchedEdgeCount = 0;
+        touchedNodeCount = 0;
+        for (int node = 0; node < balance.length; node++) {
+            baseBalance[node] = graph.getBalance(node);
+            balance[node] = baseBalance[node];
+        }
+        baseFingerprint = edgeFingerprint + graph.getNodeFingerprint();
+    }
+
+    /**
+     * Writes the balances changed since the last reset back into the graph.
+     */
+    public void commitBalances() {
+        for (int i = 0; i < touchedNodeCount; i++) {
+            int node = touchedNodes[i];
+            graph.setBalance(graph.getNodeId(node), balance[node]);
+        }
+    }
+
+    int getTouchedEdgeCount() {
+        return touchedEdgeCount;
+    }
+
+    int getTouchedEdge(int i) {
+        return touchedEdges[i];
+    }
+
+    int getTouchedNodeCount() {
+        return touchedNodeCount;
+    }
+
+    int getTouchedNode(int i) {
+        return touchedNodes[i];
+    }
+
+    private void touchEdge(int edge) {
+        if (!edgeTouched[edge]) {
+            edgeTouched[edge] = true;
+            touchedEdges[touchedEdgeCount++] = edge;
+        }
+    }
+
+    private void touchNode(int node) {
+        if (!nodeTouched[node]) {
+            nodeTouched[node] = true;
+            touchedNodes[touchedNodeCount++] = node;
+        }
+    }
+}
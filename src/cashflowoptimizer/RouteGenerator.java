@@ -0,0 +1,286 @@
+package cashflowoptimizer;
+
+import java.util.*;
+
+/**
+ * Enumerates the K cheapest loopless routes between two nodes with Yen's
+ * algorithm and offers each one as an Action, so the agent can choose among
+ * routes instead of being handed a single whole-pair action.
+ *
+ * Only edges with positive capacity are used, and costs must not be
+ * negative, as the Dijkstra spur searches require. Results are cached per
+ * pair. An entry stays valid until an edge on one of its routes is changed
+ * through Graph.updateEdge, or the graph's structure version moves because an
+ * edge or node was added or some edge became usable or cheaper; changes that
+ * only make off-route edges worse cannot alter the top K and keep the entry.
+ */
+public class RouteGenerator {
+    private final Graph graph;
+    private final int k;
+    private final Map<Long, CachedRoutes> cache;
+    private long cacheStructureVersion;
+    private long hits;
+    private long misses;
+
+    // Dijkstra scratch, reused between searches
+    private CsrGraph network;
+    private double[] distance;
+    private int[] parentEdge;
+    private int[] nodeBlocked;
+    private int[] edgeBlocked;
+    private int blockStamp;
+    private final IndexedDaryHeap queue;
+
+    public RouteGenerator(Graph graph, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Number of routes must be positive");
+        }
+        this.graph = graph;
+        this.k = k;
+        this.cache = new HashMap<>();
+        this.queue = new IndexedDaryHeap();
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns up to K routes from sourceId to sinkId, cheapest first.
+     * @return One Action per route, empty if the nodes are unknown or not connected
+     */
+    public List<Action> getRoutes(String sourceId, String sinkId) {
+        int source = graph.getNodeIndex(sourceId);
+        int sink = graph.getNodeIndex(sinkId);
+        if (source == -1 || sink == -1 || source == sink) {
+            return Collections.emptyList();
+        }
+
+        if (graph.getStructureVersion() != cacheStructureVersion) {
+            cache.clear();  // New or cheaper paths may exist anywhere
+            cacheStructureVersion = graph.getStructureVersion();
+        }
+        Long pairKey = QTable.key(source, sink);
+        CachedRoutes cached = cache.get(pairKey);
+        if (cached != null && cached.isValid(graph)) {
+            hits++;
+            return cached.routes;
+        }
+        misses++;
+
+        List<int[]> paths = findRoutes(source, sink);
+        List<Action> routes = new ArrayList<>(paths.size());
+        for (int[] path : paths) {
+            routes.add(new Action(sourceId, sinkId, path));
+        }
+        cached = new CachedRoutes(graph, Collections.unmodifiableList(routes), paths);
+        cache.put(pairKey, cached);
+        return cached.routes;
+    }
+
+    /**
+     * @return Sum of the current costs of the route's edges
+     */
+    public double getRouteCost(Action route) {
+        return routeCost(route.getRoute());
+    }
+
+    public long getCacheHits() {
+        return hits;
+    }
+
+    public long getCacheMisses() {
+        return misses;
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    // Yen's algorithm: each new route deviates from an earlier one at some spur node
+    private List<int[]> findRoutes(int source, int sink) {
+        network = graph.freeze();
+        int n = network.getNodeCount();
+        if (distance == null || distance.length < n) {
+            distance = new double[n];
+            parentEdge = new int[n];
+            nodeBlocked = new int[n];
+        }
+        if (edgeBlocked == null || edgeBlocked.length < network.getEdgeCount()) {
+            edgeBlocked = new int[network.getEdgeCount()];
+        }
+
+        List<int[]> accepted = new ArrayList<>();
+        int[] first = shortestPath(source, sink, newBlockStamp());
+        if (first == null) {
+            return accepted;
+        }
+        accepted.add(first);
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        Set<List<Integer>> seen = new HashSet<>();
+        seen.add(asList(first));
+        while (accepted.size() < k) {
+            int[] previous = accepted.get(accepted.size() - 1);
+            int spurNode = source;
+            for (int i = 0; i < previous.length; i++) {
+                int stamp = newBlockStamp();
+                // Edges that leave the spur node on an accepted route with the same root
+                for (int[] path : accepted) {
+                    if (path.length > i && sameRoot(path, previous, i)) {
+                        edgeBlocked[path[i]] = stamp;
+                    }
+                }
+                // Root nodes other than the spur node, which keeps the route loopless
+                int node = source;
+                for (int j = 0; j < i; j++) {
+                    nodeBlocked[node] = stamp;
+                    node = graph.getEdgeDest(previous[j]);
+                }
+
+                int[] spur = shortestPath(spurNode, sink, stamp);
+                if (spur != null) {
+                    int[] route = Arrays.copyOf(previous, i + spur.length);
+                    System.arraycopy(spur, 0, route, i, spur.length);
+                    if (seen.add(asList(route))) {
+                        candidates.add(new Candidate(route, routeCost(route)));
+                    }
+                }
+                spurNode = graph.getEdgeDest(previous[i]);
+            }
+
+            Candidate next = candidates.poll();
+            if (next == null) {
+                break;
+            }
+            accepted.add(next.route);
+        }
+        return accepted;
+    }
+
+    // Dijkstra over usable forward arcs, skipping nodes and edges blocked with this stamp
+    private int[] shortestPath(int from, int to, int stamp) {
+        int n = network.getNodeCount();
+        Arrays.fill(distance, 0, n, Double.MAX_VALUE);
+        distance[from] = 0;
+        parentEdge[from] = -1;
+        queue.reset(n);
+        queue.push(from, 0);
+        while (!queue.isEmpty()) {
+            int u = queue.pop();
+            if (u == to) {
+                break;
+            }
+            for (int arc = network.firstArc(u), end = network.endArc(u); arc < end; arc++) {
+                if (!network.isForward(arc) || network.getCapacity(arc) <= 0) continue;
+                int v = network.getTarget(arc);
+                int edge = network.getEdge(arc);
+                if (nodeBlocked[v] == stamp || edgeBlocked[edge] == stamp) continue;
+                double newDist = distance[u] + network.getCost(arc);
+                if (newDist < distance[v]) {
+                    distance[v] = newDist;
+                    parentEdge[v] = edge;
+                    queue.push(v, newDist);
+                }
+            }
+        }
+        if (distance[to] == Double.MAX_VALUE) {
+            return null;
+        }
+
+        int length = 0;
+        for (int node = to; node != from; node = graph.getEdgeSource(parentEdge[node])) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int node = to; node != from; node = graph.getEdgeSource(parentEdge[node])) {
+            path[--length] = parentEdge[node];
+        }
+        return path;
+    }
+
+    private int newBlockStamp() {
+        if (++blockStamp == Integer.MAX_VALUE) {
+            Arrays.fill(nodeBlocked, 0);
+            Arrays.fill(edgeBlocked, 0);
+            blockStamp = 1;
+        }
+        return blockStamp;
+    }
+
+    private double routeCost(int[] route) {
+        double cost = 0;
+        for (int edge : route) {
+            cost += graph.getEdgeCost(edge);
+        }
+        return cost;
+    }
+
+    private static boolean sameRoot(int[] a, int[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) return false;
+        }
+        return true;
+    }
+
+    private static List<Integer> asList(int[] route) {
+        List<Integer> list = new ArrayList<>(route.length);
+        for (int edge : route) {
+            list.add(edge);
+        }
+        return list;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final int[] route;
+        private final double cost;
+
+        Candidate(int[] route, double cost) {
+            this.route = route;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int byCost = Double.compare(cost, other.cost);
+            return byCost != 0 ? byCost : Integer.compare(route.length, other.route.length);
+        }
+    }
+
+    // Routes of one pair plus the edge versions they were computed against
+    private static class CachedRoutes {
+        private final List<Action> routes;
+        private final int[] edges;
+        private final long[] edgeVersions;
+
+        CachedRoutes(Graph graph, List<Action> routes, List<int[]> paths) {
+            this.routes = routes;
+            Set<Integer> distinct = new LinkedHashSet<>();
+            for (int[] path : paths) {
+                for (int edge : path) {
+                    distinct.add(edge);
+                }
+            }
+            edges = new int[distinct.size()];
+            edgeVersions = new long[edges.length];
+            int i = 0;
+            for (int edge : distinct) {
+                edges[i] = edge;
+                edgeVersions[i++] = graph.getEdgeVersion(edge);
+            }
+        }
+
+        boolean isValid(Graph graph) {
+            for (int i = 0; i < edges.length; i++) {
+                if (graph.getEdgeVersion(edges[i]) != edgeVersions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
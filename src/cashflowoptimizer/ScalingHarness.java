@@ -0,0 +1,132 @@
+package cashflowoptimizer;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Runs the optimizer on generated graphs of growing size and writes a
+ * scaling curve as CSV: for each size, the node and edge counts, the time to
+ * generate and to optimise, the heap the graph occupies, and the peak heap
+ * during optimisation.
+ *
+ * Usage: java -Xmx8g -cp out cashflowoptimizer.ScalingHarness
+ *            [--edges 1000,10000,100000,1000000] [--mode SINGLE_PASS]
+ *            [--solver NETWORK_SIMPLEX] [--iterations 1]
+ *            [--seed 42] [--out data/scaling.csv]
+ *
+ * The pairwise modes solve every revenue/expense pair, which grows with the
+ * square of the graph, so the single-pass mode is the default. The smallest
+ * size is run once untimed first so JIT compilation does not skew the curve.
+ */
+public class ScalingHarness {
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                System.out.println("Unexpected argument: " + args[i]);
+                return;
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        List<Long> edgeCounts = new ArrayList<>();
+        for (String size : options.getOrDefault("edges", "1000,10000,100000,1000000").split(",")) {
+            edgeCounts.add((long) Double.parseDouble(size.trim()));  // Accepts 1e7 as well as 10000000
+        }
+        OptimizationMode mode = OptimizationMode.valueOf(options.getOrDefault("mode", "SINGLE_PASS"));
+        SolverType solverType = SolverType.valueOf(options.getOrDefault("solver", "NETWORK_SIMPLEX"));
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "1"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        Path out = Paths.get(options.getOrDefault("out", "data/scaling.csv"));
+
+        String header = "targetEdges,nodes,edges,generateMs,optimizeMs,graphMB,peakHeapMB,totalCost";
+        List<String> rows = new ArrayList<>();
+        measure(Collections.min(edgeCounts), mode, solverType, iterations, seed);
+        System.out.println(header);
+        for (long edges : edgeCounts) {
+            String row = measure(edges, mode, solverType, iterations, seed);
+            System.out.println(row);
+            rows.add(row);
+        }
+
+        if (out.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(out.toAbsolutePath().getParent());
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            writer.println(header);
+            for (String row : rows) {
+                writer.println(row);
+            }
+        }
+        System.out.println("Scaling curve saved to: " + out);
+    }
+
+    private static String measure(long edges, OptimizationMode mode, SolverType solverType,
+                                  int iterations, long seed) {
+        GraphGenerator generator = new GraphGenerator(seed);
+        generator.setEdgeCount(edges);
+
+        long heapBefore = usedHeapAfterGc();
+        long start = System.nanoTime();
+        CashFlowOptimizer optimizer = new CashFlowOptimizer();
+        generator.generate(optimizer.getGraph());
+        optimizer.getGraph().freeze();
+        long generateNanos = System.nanoTime() - start;
+        long graphBytes = usedHeapAfterGc() - heapBefore;
+
+        optimizer.setOptimizationMode(mode);
+        optimizer.setSolverType(solverType);
+        optimizer.setRandomSeed(seed);
+        // Saving the results would time disk writes and overwrite data/financial_data.json
+        optimizer.setAutosave(false);
+        resetPeakHeap();
+        // Keep the per-iteration progress out of the measurement
+        LogLevel logLevel = Log.getLevel();
+        Log.setLevel(LogLevel.WARN);
+        start = System.nanoTime();
+        try {
+            optimizer.optimize(iterations);
+        } finally {
+            Log.setLevel(logLevel);
+        }
+        long optimizeNanos = System.nanoTime() - start;
+
+        Graph graph = optimizer.getGraph();
+        return String.format(Locale.ROOT, "%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.2f",
+                             edges, graph.getNodeCount(), graph.getEdgeCount(),
+                             generateNanos / 1e6, optimizeNanos / 1e6,
+                             graphBytes / 1048576.0, peakHeap() / 1048576.0, optimizer.getBestTotalCost());
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // Sum of per-pool peaks; pools peak at different moments, so this is an upper bound
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,36 @@
+package cashflowoptimizer;
+
+/**
+ * Priority queue of node indices used by the shortest-path step of the
+ * min-cost flow solvers. Implementations keep at most one entry per node, so
+ * pushing a node that is already queued lowers its key instead of adding a
+ * duplicate.
+ */
+public interface ShortestPathQueue {
+    /**
+     * Empties the queue and prepares it for node indices 0 .. nodeCount - 1.
+     * Implementations reuse their arrays when the node count does not grow.
+     */
+    void reset(int nodeCount);
+
+    boolean isEmpty();
+
+    /**
+     * Inserts the node, or lowers its key if it is already queued. A key
+     * higher than the queued one is ignored.
+     */
+    void push(int node, double key);
+
+    /**
+     * Removes and returns the node with the smallest key.
+     */
+    int pop();
+
+    /**
+     * @return true if keys may never drop below the last popped key, which
+     *         Dijkstra only guarantees on non-negative reduced costs
+     */
+    default boolean isMonotone() {
+        return false;
+    }
+}
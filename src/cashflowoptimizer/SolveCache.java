@@ -0,0 +1,208 @@
+package cashflowoptimizer;
+
+import java.util.*;
+
+/**
+ * Remembers min-cost flow solves so that a problem seen before is answered
+ * without running a solver again, e.g. the same revenue/expense pair in
+ * every optimize iteration, or the same graph posted to the HTTP service
+ * twice.
+ *
+ * Entries are keyed by the graph fingerprint of the problem, the source and
+ * sink and the solver type. The fingerprint covers every edge's ends,
+ * capacity and cost and every node's ID, type and balance, and Graph keeps it
+ * up to date through addEdge, updateEdge, setBalance, updateBalance and the
+ * other mutators. A changed graph therefore simply looks up a different key,
+ * and entries of states it left behind age out of the cache.
+ *
+ * Besides the solver's results an entry keeps the flow and balance changes
+ * the solve left in its ResidualWorkspace, so a hit puts any workspace over
+ * the same problem into the state the solve would have left. The cache is
+ * bounded by entry count and by an estimate of the bytes it holds, evicts
+ * the least recently used entries first, and is safe to share between
+ * threads.
+ */
+public class SolveCache {
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+    public static final long DEFAULT_MAX_WEIGHT = 32L << 20;
+
+    // Rough per-object sizes used to weigh entries
+    private static final long ENTRY_WEIGHT = 128;
+    private static final long TRANSACTION_WEIGHT = 48;
+    private static final long CHANGE_WEIGHT = 12;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public SolveCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param maxEntries Most solves kept at once
+     * @param maxWeight Most estimated bytes kept at once; larger solves are not cached
+     */
+    public SolveCache(int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    synchronized void put(Key key, Entry entry) {
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += entry.weight;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops every entry. The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Fraction of lookups answered from the cache, 0 before the first
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return Estimated bytes held by the cached entries
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    static final class Key {
+        private final long fingerprint;
+        private final String sourceId;
+        private final String sinkId;
+        private final SolverType solverType;
+
+        Key(long fingerprint, String sourceId, String sinkId, SolverType solverType) {
+            this.fingerprint = fingerprint;
+            this.sourceId = sourceId;
+            this.sinkId = sinkId;
+            this.solverType = solverType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return fingerprint == other.fingerprint && sourceId.equals(other.sourceId)
+                    && sinkId.equals(other.sinkId) && solverType == other.solverType;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (fingerprint ^ (fingerprint >>> 32)) * 31 + sourceId.hashCode() * 17 + sinkId.hashCode()
+                    + solverType.ordinal();
+        }
+    }
+
+    // A finished solve and the workspace changes it made, by edge and node index
+    static final class Entry {
+        final double totalCost;
+        final double totalFlow;
+        final List<TransactionRecord> transactions;
+        final int[] edges;
+        final double[] flows;
+        final int[] nodes;
+        final double[] balances;
+        final long weight;
+
+        Entry(double totalCost, double totalFlow, List<TransactionRecord> transactions, ResidualWorkspace workspace) {
+            this.totalCost = totalCost;
+            this.totalFlow = totalFlow;
+            this.transactions = Collections.unmodifiableList(new ArrayList<>(transactions));
+
+            CsrGraph network = workspace.getNetwork();
+            edges = new int[workspace.getTouchedEdgeCount()];
+            flows = new double[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                edges[i] = workspace.getTouchedEdge(i);
+                flows[i] = workspace.getFlow(network.getForwardArc(edges[i]));
+            }
+            nodes = new int[workspace.getTouchedNodeCount()];
+            balances = new double[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = workspace.getTouchedNode(i);
+                balances[i] = workspace.getBalance(nodes[i]);
+            }
+            weight = ENTRY_WEIGHT + TRANSACTION_WEIGHT * transactions.size()
+                    + CHANGE_WEIGHT * (edges.length + nodes.length);
+        }
+
+        // Applies the recorded changes to a workspace at its base state
+        void replay(ResidualWorkspace workspace) {
+            CsrGraph network = workspace.getNetwork();
+            for (int i = 0; i < edges.length; i++) {
+                workspace.addFlow(network.getForwardArc(edges[i]), flows[i]);
+            }
+            for (int i = 0; i < nodes.length; i++) {
+                workspace.setBalance(nodes[i], balances[i]);
+            }
+        }
+    }
+}
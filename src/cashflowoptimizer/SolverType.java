@@ -0,0 +1,50 @@
+package cashflowoptimizer;
+
+/**
+ * Min-cost flow engines that CashFlowOptimizer can pick at runtime.
+ */
+public enum SolverType {
+    SUCCESSIVE_SHORTEST_PATH,  // Primal-dual MinCostMaxFlow
+    NETWORK_SIMPLEX,           // Spanning-tree NetworkSimplex
+    COST_SCALING;              // Cost-scaling push-relabel for very large graphs
+
+    public FlowSolver create(Graph graph) {
+        switch (this) {
+            case NETWORK_SIMPLEX:
+                return new NetworkSimplex(graph);
+            case COST_SCALING:
+                return new CostScalingPushRelabel(graph);
+            case SUCCESSIVE_SHORTEST_PATH:
+            default:
+                MinCostMaxFlow mcmf = new MinCostMaxFlow(graph);
+                mcmf.setUsePotentials(true);
+                return mcmf;
+        }
+    }
+
+    /**
+     * Creates a solver that works in the given workspace and leaves its graph
+     * untouched, so the workspace can be reset and the solver reused.
+     */
+    public FlowSolver create(ResidualWorkspace workspace) {
+        switch (this) {
+            case NETWORK_SIMPLEX:
+                return new NetworkSimplex(workspace);
+            case COST_SCALING:
+                return new CostScalingPushRelabel(workspace);
+            case SUCCESSIVE_SHORTEST_PATH:
+            default:
+                MinCostMaxFlow mcmf = new MinCostMaxFlow(workspace);
+                mcmf.setUsePotentials(true);
+                return mcmf;
+        }
+    }
+
+    /**
+     * Like create(workspace), but answers solves seen before from the cache.
+     * @param cache Cache shared with other solvers, or null to always solve
+     */
+    public FlowSolver create(ResidualWorkspace workspace, SolveCache cache) {
+        return cache == null ? create(workspace) : new CachingFlowSolver(this, workspace, cache);
+    }
+}
@@ -1,26 +1,75 @@
 // State.java
 package cashflowoptimizer;
 
-import java.util.*;
+import java.util.Arrays;
 
+/**
+ * Immutable fingerprint of the node balances. Each balance is rounded to a
+ * bucket of its node type's width (see StateDiscretizer), and the bucket
+ * vector is indexed like the graph's nodes. The 64-bit hash is computed once,
+ * so equals and hashCode cost no sorting, formatting or allocation.
+ */
 public class State {
-    private Map<String, Double> nodeBalances;
+    private final long[] buckets;
+    private final long fingerprint;
     
-    public State(Map<String, Double> nodeBalances) {
-        this.nodeBalances = new HashMap<>(nodeBalances);
+    private State(long[] buckets) {
+        this.buckets = buckets;
+        this.fingerprint = fingerprint(buckets);
+    }
+    
+    /**
+     * State of the graph's current balances.
+     */
+    public static State of(Graph graph, StateDiscretizer discretizer) {
+        long[] buckets = new long[graph.getNodeCount()];
+        for (int node = 0; node < buckets.length; node++) {
+            buckets[node] = discretizer.bucket(graph.getNodeType(node), graph.getBalance(node));
+        }
+        return new State(buckets);
+    }
+    
+    /**
+     * State of the balances a solve left in the workspace.
+     */
+    public static State of(ResidualWorkspace workspace, StateDiscretizer discretizer) {
+        Graph graph = workspace.getGraph();
+        long[] buckets = new long[graph.getNodeCount()];
+        for (int node = 0; node < buckets.length; node++) {
+            buckets[node] = discretizer.bucket(graph.getNodeType(node), workspace.getBalance(node));
+        }
+        return new State(buckets);
+    }
+    
+    /**
+     * State of the given balances, indexed like the graph's nodes.
+     */
+    public static State of(Graph graph, double[] balances, StateDiscretizer discretizer) {
+        long[] buckets = new long[graph.getNodeCount()];
+        for (int node = 0; node < buckets.length; node++) {
+            buckets[node] = discretizer.bucket(graph.getNodeType(node), balances[node]);
+        }
+        return new State(buckets);
+    }
+    
+    /**
+     * @return The cached 64-bit hash of the bucket vector
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+    
+    public int getNodeCount() {
+        return buckets.length;
+    }
+    
+    public long getBucket(int node) {
+        return buckets[node];
     }
     
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        List<String> sortedKeys = new ArrayList<>(nodeBalances.keySet());
-        Collections.sort(sortedKeys);
-        
-        for (String key : sortedKeys) {
-            sb.append(key).append(":").append(String.format("%.2f", nodeBalances.get(key))).append(";");
-        }
-        
-        return sb.toString();
+        return Arrays.toString(buckets);
     }
     
     @Override
@@ -29,12 +78,25 @@ public class State {
         if (obj == null || getClass() != obj.getClass()) return false;
         
         State other = (State) obj;
-        return toString().equals(other.toString());
+        return fingerprint == other.fingerprint && Arrays.equals(buckets, other.buckets);
     }
     
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+    
+    private static long fingerprint(long[] buckets) {
+        long hash = buckets.length;
+        for (long bucket : buckets) {
+            hash = Long.rotateLeft(hash ^ bucket * 0x9E3779B97F4A7C15L, 31) * 0xBF58476D1CE4E5B9L;
+        }
+        // Murmur3 finaliser
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
     }
 }
-
@@ -0,0 +1,46 @@
+package cashflowoptimizer;
+
+import java.util.Arrays;
+
+/**
+ * Bucket widths used to turn balances into State fingerprints, one per
+ * NodeType. A balance maps to the nearest multiple of its width, so wider
+ * buckets merge nearby balances and keep the Q-table's state space bounded.
+ * The default width of 0.01 keeps cent precision.
+ */
+public class StateDiscretizer {
+    private static final double DEFAULT_WIDTH = 0.01;
+
+    private final double[] widths;
+
+    public StateDiscretizer() {
+        widths = new double[NodeType.values().length];
+        Arrays.fill(widths, DEFAULT_WIDTH);
+    }
+
+    /**
+     * Gets the bucket width for balances of the given node type
+     * @param type The node type
+     * @return The bucket width
+     */
+    public double getBucketWidth(NodeType type) {
+        return widths[type.ordinal()];
+    }
+
+    /**
+     * Sets the bucket width for balances of the given node type
+     * @param type The node type
+     * @param width Positive width, e.g. 100 to treat balances within $100 as equal
+     */
+    public void setBucketWidth(NodeType type, double width) {
+        if (!(width > 0)) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        widths[type.ordinal()] = width;
+    }
+
+    public long bucket(NodeType type, double balance) {
+        double width = type == null ? DEFAULT_WIDTH : widths[type.ordinal()];
+        return Math.round(balance / width);
+    }
+}
@@ -0,0 +1,61 @@
+package cashflowoptimizer;
+
+/**
+ * QTable split into independently locked stripes, so that many training
+ * threads can read and write Q-values at once. A key always maps to the same
+ * stripe. Read-modify-write sequences are not atomic across calls; as in
+ * Hogwild training, an occasional lost update is accepted for throughput.
+ */
+public class StripedQTable {
+    private final QTable[] stripes;
+    private final int mask;
+
+    public StripedQTable(int stripeCount) {
+        int count = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new QTable[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new QTable();
+        }
+        mask = count - 1;
+    }
+
+    public double get(long key, double defaultValue) {
+        QTable stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.get(key, defaultValue);
+        }
+    }
+
+    public void put(long key, double value) {
+        QTable stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.put(key, value);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (QTable stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Calls the consumer for every entry, one stripe at a time.
+     */
+    public void forEach(QTable.EntryConsumer consumer) {
+        for (QTable stripe : stripes) {
+            synchronized (stripe) {
+                stripe.forEach(consumer);
+            }
+        }
+    }
+
+    private QTable stripeFor(long key) {
+        // Fibonacci hashing; the top bits pick the stripe, QTable mixes the rest
+        return stripes[(int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask];
+    }
+}
@@ -0,0 +1,707 @@
+package cashflowoptimizer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of changes to a Graph and of optimization results,
+ * kept in a directory together with GraphSnapshot files.
+ *
+ * The directory holds snapshot-N.bin and journal-N.log files. Journal N
+ * continues from snapshot N, or from an older snapshot and the journals in
+ * between. Each record is framed as
+ * <pre>
+ *   int length, int CRC32, byte type, payload
+ * </pre>
+ * little-endian, so replay detects a torn or damaged record, stops there and
+ * cuts the damaged tail off.
+ *
+ * The append methods only buffer records, and commit writes them. Commits
+ * from several threads are grouped: one writes and syncs everything appended
+ * so far while the others wait, and a commit whose records were covered
+ * returns without touching the disk. Once the files since the last snapshot
+ * pass the compaction threshold, commit starts a new journal and a background
+ * thread writes a snapshot of a copy of the graph, then deletes older files.
+ *
+ * Only the thread that appends and commits may change the graph.
+ */
+public class TransactionJournal {
+    private static final int MAGIC = 0x474A4C31;  // "GJL1"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 16;
+    private static final int FRAME_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 30;
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+
+    private static final byte NODE = 1;
+    private static final byte EDGE = 2;
+    private static final byte EDGE_UPDATE = 3;
+    private static final byte TRANSACTION = 4;
+    private static final byte RESULT = 5;
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private long fsyncIntervalMillis;
+    private long compactionThreshold;
+    private final ScheduledExecutorService background;
+    private Future<?> compaction;
+    private ScheduledFuture<?> periodicSync;
+
+    // Records appended but not yet written, guarded by this
+    private ByteBuffer pending;
+    private long appendedRecords;
+    private final CRC32 crc;
+    private byte[] lastResult;  // Framed RESULT record, carried into each new journal
+
+    // File state, guarded by commitLock
+    private final ReentrantLock commitLock;
+    private Graph graph;
+    private volatile FileChannel channel;
+    private ByteBuffer spare;
+    private long generation;
+    private long bytesSinceSnapshot;
+    private long committedRecords;
+    private long lastSyncNanos;
+    private boolean unsynced;
+
+    private long commits;
+    private long syncs;
+    private long compactions;
+
+    public TransactionJournal(Path directory, FsyncPolicy fsyncPolicy) {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = 100;
+        this.compactionThreshold = 64L << 20;
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-background");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pending = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        this.spare = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        this.crc = new CRC32();
+        this.commitLock = new ReentrantLock();
+    }
+
+    /**
+     * @param millis Longest time committed records stay unsynced under FsyncPolicy.INTERVAL
+     */
+    public void setFsyncInterval(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Fsync interval must be positive");
+        }
+        this.fsyncIntervalMillis = millis;
+    }
+
+    /**
+     * @param bytes Journal bytes since the last snapshot that trigger a compaction
+     */
+    public void setCompactionThreshold(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Compaction threshold must be positive");
+        }
+        this.compactionThreshold = bytes;
+    }
+
+    /**
+     * Starts a new history from the graph's current contents: writes a
+     * snapshot of it and an empty journal, then deletes older files. Fails
+     * if the directory holds a history this journal has not recovered or
+     * started, since opening would delete it unreplayed.
+     */
+    public void open(Graph graph) throws IOException {
+        open(graph, false);
+    }
+
+    /**
+     * Like open(graph), but with replaceHistory set an existing history in
+     * the directory is deleted even if it was never recovered.
+     */
+    public void open(Graph graph, boolean replaceHistory) throws IOException {
+        commitLock.lock();
+        try {
+            awaitCompaction();
+            closeChannel();
+            if (!replaceHistory && generation == 0 && hasHistory()) {
+                throw new IOException(directory + " holds a history that was not recovered; recover it or choose another directory");
+            }
+            Files.createDirectories(directory);
+            long next = Math.max(generation, latestGeneration()) + 1;
+            // The snapshot must be complete before a journal that follows it exists
+            GraphSnapshot.write(snapshotPath(next), graph);
+            discardPending();
+            synchronized (this) {
+                lastResult = null;
+            }
+            this.graph = graph;
+            bytesSinceSnapshot = 0;
+            startJournal(next, false);
+            deleteBefore(next);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the graph's contents with the newest readable snapshot in the
+     * directory and replays the journals after it, then continues the
+     * history in a new journal.
+     * @param listener Receives each replayed optimization result, may be null
+     * @return false if the directory holds no snapshot
+     */
+    public boolean recover(Graph graph, Listener listener) throws IOException {
+        commitLock.lock();
+        try {
+            awaitCompaction();
+            closeChannel();
+            if (!Files.isDirectory(directory)) {
+                return false;
+            }
+            TreeMap<Long, Path> snapshots = list("snapshot-", ".bin");
+            TreeMap<Long, Path> journals = list("journal-", ".log");
+            Long base = null;
+            for (Long snapshotGeneration : snapshots.descendingKeySet()) {
+                try {
+                    GraphSnapshot.read(snapshots.get(snapshotGeneration), graph);
+                    base = snapshotGeneration;
+                    break;
+                } catch (IOException e) {
+                    Log.warn("Skipping unreadable snapshot " + snapshots.get(snapshotGeneration).getFileName()
+                             + ": " + e.getMessage());
+                }
+            }
+            if (base == null) {
+                return false;
+            }
+
+            discardPending();
+            synchronized (this) {
+                lastResult = null;
+            }
+            bytesSinceSnapshot = 0;
+            long last = base;
+            boolean damaged = false;
+            for (Map.Entry<Long, Path> entry : journals.tailMap(base, true).entrySet()) {
+                if (damaged) {
+                    // Later journals continue a history that no longer exists
+                    Files.delete(entry.getValue());
+                    continue;
+                }
+                damaged = !replay(entry.getValue(), entry.getKey(), graph, listener);
+                last = entry.getKey();
+            }
+            this.graph = graph;
+            startJournal(last + 1, false);
+            return true;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the directory holds snapshots or journals
+     */
+    public boolean hasHistory() throws IOException {
+        return Files.isDirectory(directory) && latestGeneration() > 0;
+    }
+
+    public synchronized void appendNode(String nodeId, NodeType type, double balance) {
+        int start = beginRecord(NODE);
+        putString(nodeId);
+        ensure(9);
+        pending.put((byte) type.ordinal());
+        pending.putDouble(balance);
+        endRecord(start);
+    }
+
+    public synchronized void appendEdge(String sourceId, String destId, double capacity, double cost) {
+        appendEdgeRecord(EDGE, sourceId, destId, capacity, cost);
+    }
+
+    /**
+     * Records a change to an edge, identified by the order in which it was
+     * added, so replay updates it without searching the edges.
+     */
+    public synchronized void appendEdgeUpdate(int edge, double capacity, double cost) {
+        int start = beginRecord(EDGE_UPDATE);
+        ensure(20);
+        pending.putInt(edge);
+        pending.putDouble(capacity);
+        pending.putDouble(cost);
+        endRecord(start);
+    }
+
+    /**
+     * Records a transaction applied to the balances. Replay moves its amount
+     * from the source to the destination again.
+     */
+    public synchronized void appendTransaction(TransactionRecord transaction) {
+        appendEdgeRecord(TRANSACTION, transaction.getSourceNode(), transaction.getDestNode(),
+                         transaction.getAmount(), transaction.getCost());
+    }
+
+    /**
+     * Records the outcome of an optimization run, replacing earlier ones.
+     */
+    public synchronized void appendResult(List<TransactionRecord> transactions, List<Double> costHistory, double totalCost) {
+        int start = beginRecord(RESULT);
+        ensure(12);
+        pending.putDouble(totalCost);
+        pending.putInt(transactions.size());
+        for (TransactionRecord transaction : transactions) {
+            putString(transaction.getSourceNode());
+            putString(transaction.getDestNode());
+            ensure(16);
+            pending.putDouble(transaction.getAmount());
+            pending.putDouble(transaction.getCost());
+        }
+        ensure(4 + 8 * costHistory.size());
+        pending.putInt(costHistory.size());
+        for (double cost : costHistory) {
+            pending.putDouble(cost);
+        }
+        endRecord(start);
+        lastResult = Arrays.copyOfRange(pending.array(), start, pending.position());
+    }
+
+    /**
+     * Writes every record appended so far, syncing as the FsyncPolicy says,
+     * and starts a compaction if the journal has grown past the threshold.
+     */
+    public void commit() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appendedRecords;
+        }
+        commitLock.lock();
+        try {
+            if (committedRecords >= target) {
+                return;  // Written by a commit that ran while this one waited
+            }
+            checkOpen();
+            ByteBuffer batch;
+            long upTo;
+            synchronized (this) {
+                batch = pending;
+                upTo = appendedRecords;
+                pending = spare;
+            }
+            batch.flip();
+            bytesSinceSnapshot += batch.remaining();
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            batch.clear();
+            spare = batch;
+            committedRecords = upTo;
+            commits++;
+
+            if (fsyncPolicy == FsyncPolicy.ALWAYS || (fsyncPolicy == FsyncPolicy.INTERVAL
+                    && System.nanoTime() - lastSyncNanos >= TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis))) {
+                sync();
+            } else {
+                unsynced = true;
+            }
+            if (bytesSinceSnapshot >= compactionThreshold && (compaction == null || compaction.isDone())) {
+                compact();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Commits outstanding records, waits for a running compaction and
+     * closes the journal file.
+     */
+    public void close() throws IOException {
+        commitLock.lock();
+        try {
+            if (channel != null) {
+                commit();
+            }
+            awaitCompaction();
+            closeChannel();
+            graph = null;
+        } finally {
+            commitLock.unlock();
+            background.shutdown();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * @return Number of the journal file being appended to
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getBytesSinceSnapshot() {
+        return bytesSinceSnapshot;
+    }
+
+    public long getCommitCount() {
+        return commits;
+    }
+
+    public long getSyncCount() {
+        return syncs;
+    }
+
+    public long getCompactionCount() {
+        return compactions;
+    }
+
+    // Switches to a new journal and snapshots a copy of the graph in the background
+    private void compact() throws IOException {
+        Graph copy = graph.copy();
+        long next = generation + 1;
+        closeChannel();
+        bytesSinceSnapshot = 0;
+        startJournal(next, true);
+        compactions++;
+        compaction = background.submit(() -> {
+            try {
+                GraphSnapshot.write(snapshotPath(next), copy);
+                deleteBefore(next);
+            } catch (IOException e) {
+                Log.error("Error compacting journal: " + e.getMessage());
+            }
+        });
+    }
+
+    private void startJournal(long journalGeneration, boolean carryResult) throws IOException {
+        channel = FileChannel.open(journalPath(journalGeneration), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        byte[] result;
+        synchronized (this) {
+            result = carryResult ? lastResult : null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE + (result == null ? 0 : result.length))
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(journalGeneration);
+        if (result != null) {
+            header.put(result);
+        }
+        header.flip();
+        bytesSinceSnapshot += header.remaining();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        generation = journalGeneration;
+        unsynced = true;
+        if (fsyncPolicy == FsyncPolicy.INTERVAL && periodicSync == null) {
+            periodicSync = background.scheduleWithFixedDelay(this::syncIfIdle, fsyncIntervalMillis,
+                                                             fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        syncs++;
+        lastSyncNanos = System.nanoTime();
+        unsynced = false;
+    }
+
+    // Background sync for FsyncPolicy.INTERVAL; skips a turn rather than wait for a commit
+    private void syncIfIdle() {
+        if (!commitLock.tryLock()) {
+            return;
+        }
+        try {
+            if (unsynced && channel != null) {
+                sync();
+            }
+        } catch (IOException e) {
+            Log.error("Error syncing journal: " + e.getMessage());
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            if (unsynced && fsyncPolicy != FsyncPolicy.NEVER) {
+                sync();
+            }
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void awaitCompaction() throws IOException {
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for journal compaction");
+        } catch (ExecutionException e) {
+            // The task reports its own failures
+        }
+        compaction = null;
+    }
+
+    private void checkOpen() {
+        if (channel == null) {
+            throw new IllegalStateException("Journal is not open");
+        }
+    }
+
+    private synchronized void discardPending() {
+        pending.clear();
+        committedRecords = appendedRecords;
+    }
+
+    // Applies one journal file to the graph; returns false if it ended in a damaged record
+    private boolean replay(Path path, long expectedGeneration, Graph graph, Listener listener) throws IOException {
+        long validEnd = 0;
+        String problem = null;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 20)) {
+            byte[] frame = new byte[FILE_HEADER_SIZE];
+            ByteBuffer frameBuffer = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(in, frame, FILE_HEADER_SIZE) < FILE_HEADER_SIZE
+                    || frameBuffer.getInt(0) != MAGIC || frameBuffer.getInt(4) != VERSION
+                    || frameBuffer.getLong(8) != expectedGeneration) {
+                problem = "bad header";
+            } else {
+                validEnd = FILE_HEADER_SIZE;
+            }
+
+            byte[] record = new byte[256];
+            while (problem == null) {
+                int read = readFully(in, frame, FRAME_SIZE);
+                if (read == 0) {
+                    break;
+                }
+                int length = frameBuffer.getInt(0);
+                if (read < FRAME_SIZE || length <= 0 || length > MAX_RECORD_SIZE) {
+                    problem = "torn record";
+                    break;
+                }
+                if (length > record.length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                if (readFully(in, record, length) < length) {
+                    problem = "torn record";
+                    break;
+                }
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != frameBuffer.getInt(4)) {
+                    problem = "checksum mismatch";
+                    break;
+                }
+                apply(record, length, graph, listener);
+                validEnd += FRAME_SIZE + length;
+            }
+        }
+        bytesSinceSnapshot += validEnd;
+        if (problem == null) {
+            return true;
+        }
+
+        Log.warn("Journal " + path.getFileName() + " ends in a " + problem + " at byte " + validEnd
+                 + "; discarding the rest.");
+        if (validEnd == 0) {
+            Files.delete(path);
+        } else {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                file.truncate(validEnd);
+                file.force(true);
+            }
+        }
+        return false;
+    }
+
+    private void apply(byte[] bytes, int length, Graph graph, Listener listener) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(bytes, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        byte type = record.get();
+        switch (type) {
+            case NODE: {
+                String nodeId = getString(record);
+                graph.addNode(nodeId, NODE_TYPES[record.get()], record.getDouble());
+                break;
+            }
+            case EDGE: {
+                String sourceId = getString(record);
+                String destId = getString(record);
+                graph.addEdge(sourceId, destId, record.getDouble(), record.getDouble());
+                break;
+            }
+            case EDGE_UPDATE: {
+                int edge = record.getInt();
+                if (edge < 0 || edge >= graph.getEdgeCount()) {
+                    throw new IOException("Journal updates unknown edge " + edge);
+                }
+                graph.updateEdge(edge, record.getDouble(), record.getDouble());
+                break;
+            }
+            case TRANSACTION: {
+                String sourceId = getString(record);
+                String destId = getString(record);
+                double amount = record.getDouble();
+                // Same arithmetic as CashFlowOptimizer.applyTransactionsAndUpdateBalancesToJson
+                graph.setBalance(sourceId, graph.getBalance(sourceId) - amount);
+                graph.setBalance(destId, graph.getBalance(destId) + amount);
+                break;
+            }
+            case RESULT: {
+                double totalCost = record.getDouble();
+                int transactionCount = record.getInt();
+                List<TransactionRecord> transactions = new ArrayList<>(transactionCount);
+                for (int i = 0; i < transactionCount; i++) {
+                    String sourceId = getString(record);
+                    String destId = getString(record);
+                    transactions.add(new TransactionRecord(sourceId, destId, record.getDouble(), record.getDouble()));
+                }
+                int historySize = record.getInt();
+                List<Double> costHistory = new ArrayList<>(historySize);
+                for (int i = 0; i < historySize; i++) {
+                    costHistory.add(record.getDouble());
+                }
+                synchronized (this) {
+                    lastResult = new byte[FRAME_SIZE + length];
+                    ByteBuffer.wrap(lastResult).order(ByteOrder.LITTLE_ENDIAN).putInt(length).putInt((int) crc.getValue());
+                    System.arraycopy(bytes, 0, lastResult, FRAME_SIZE, length);
+                }
+                if (listener != null) {
+                    listener.result(transactions, costHistory, totalCost);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private void appendEdgeRecord(byte type, String sourceId, String destId, double first, double second) {
+        int start = beginRecord(type);
+        putString(sourceId);
+        putString(destId);
+        ensure(16);
+        pending.putDouble(first);
+        pending.putDouble(second);
+        endRecord(start);
+    }
+
+    private int beginRecord(byte type) {
+        checkOpen();
+        ensure(FRAME_SIZE + 1);
+        int start = pending.position();
+        pending.position(start + FRAME_SIZE);
+        pending.put(type);
+        return start;
+    }
+
+    private void endRecord(int start) {
+        int length = pending.position() - start - FRAME_SIZE;
+        crc.reset();
+        crc.update(pending.array(), start + FRAME_SIZE, length);
+        pending.putInt(start, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        appendedRecords++;
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(4 + bytes.length);
+        pending.putInt(bytes.length);
+        pending.put(bytes);
+    }
+
+    private void ensure(int bytes) {
+        if (pending.remaining() < bytes) {
+            int capacity = Math.max(pending.capacity() * 2, pending.position() + bytes);
+            ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static int readFully(InputStream in, byte[] bytes, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(bytes, total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private long latestGeneration() throws IOException {
+        long latest = 0;
+        for (TreeMap<Long, Path> files : Arrays.asList(list("snapshot-", ".bin"), list("journal-", ".log"))) {
+            if (!files.isEmpty()) {
+                latest = Math.max(latest, files.lastKey());
+            }
+        }
+        return latest;
+    }
+
+    private void deleteBefore(long oldestKept) throws IOException {
+        for (TreeMap<Long, Path> files : Arrays.asList(list("snapshot-", ".bin"), list("journal-", ".log"))) {
+            for (Path file : files.headMap(oldestKept).values()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private TreeMap<Long, Path> list(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    private Path snapshotPath(long fileGeneration) {
+        return directory.resolve("snapshot-" + fileGeneration + ".bin");
+    }
+
+    private Path journalPath(long fileGeneration) {
+        return directory.resolve("journal-" + fileGeneration + ".log");
+    }
+
+    /**
+     * Receives optimization results found while replaying.
+     */
+    public interface Listener {
+        void result(List<TransactionRecord> transactions, List<Double> costHistory, double totalCost);
+    }
+}